@@ -0,0 +1,87 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Testing the session cache for PasswordGenerator hashes.
+ */
+public class DerivedHashCacheTest extends TestCase {
+
+    private long time = 0;
+
+    private DerivedHashCache createCache(int maxEntries, long idleTimeout) {
+        return new DerivedHashCache(maxEntries, idleTimeout) {
+            @Override
+            long now() {
+                return time;
+            }
+        };
+    }
+
+    private DerivationParameters parameters(String domain, int kgkGeneration) {
+        PasswordSetting setting = new PasswordSetting(domain);
+        setting.setSalt(UTF8.encode("pepper"));
+        setting.setUsername("hugo");
+        return new DerivationParameters(setting, kgkGeneration);
+    }
+
+    public void testGetReturnsCopy() {
+        DerivedHashCache cache = createCache(4, 1000);
+        byte[] hash = new byte[] { 1, 2, 3 };
+        cache.put(parameters("unit.test", 0), hash);
+        hash[0] = 9;
+        byte[] cached = cache.get(parameters("unit.test", 0));
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, cached));
+        cached[1] = 9;
+        assertTrue(Arrays.equals(new byte[] { 1, 2, 3 }, cache.get(parameters("unit.test", 0))));
+        cache.clear();
+    }
+
+    public void testKgkGenerationIsPartOfTheKey() {
+        DerivedHashCache cache = createCache(4, 1000);
+        cache.put(parameters("unit.test", 0), new byte[] { 1 });
+        assertNull(cache.get(parameters("unit.test", 1)));
+        assertNull(cache.get(parameters("other.test", 0)));
+        cache.clear();
+    }
+
+    public void testClearGenerationKeepsOtherGenerations() {
+        DerivedHashCache cache = createCache(4, 1000);
+        cache.put(parameters("a.test", 1), new byte[] { 1 });
+        cache.put(parameters("b.test", 2), new byte[] { 2 });
+        cache.clear(1);
+        assertNull(cache.get(parameters("a.test", 1)));
+        assertNotNull(cache.get(parameters("b.test", 2)));
+        cache.clear();
+    }
+
+    public void testLeastRecentlyUsedIsEvicted() {
+        DerivedHashCache cache = createCache(2, 1000);
+        cache.put(parameters("a.test", 0), new byte[] { 1 });
+        cache.put(parameters("b.test", 0), new byte[] { 2 });
+        assertNotNull(cache.get(parameters("a.test", 0)));
+        cache.put(parameters("c.test", 0), new byte[] { 3 });
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(parameters("a.test", 0)));
+        assertNull(cache.get(parameters("b.test", 0)));
+        assertNotNull(cache.get(parameters("c.test", 0)));
+        cache.clear();
+    }
+
+    public void testIdleEntriesExpire() {
+        DerivedHashCache cache = createCache(4, 1000);
+        cache.put(parameters("a.test", 0), new byte[] { 1 });
+        cache.put(parameters("b.test", 0), new byte[] { 2 });
+        time = 600;
+        assertNotNull(cache.get(parameters("a.test", 0)));
+        time = 1100;
+        assertNotNull(cache.get(parameters("a.test", 0)));
+        assertNull(cache.get(parameters("b.test", 0)));
+        assertEquals(1, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+}
@@ -0,0 +1,109 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Unit tests for the PBKDF2 implementation which works on the state words directly.
+ */
+public class FastPBKDF2Test extends TestCase {
+
+    public void testSha512 () {
+        byte[] expected = new byte[] { 0x26, 0x46, (byte)0xf9, (byte)0xcc, (byte)0xb5, (byte)0x8d,
+                0x21, 0x40, 0x68, 0x15, (byte)0xba, (byte)0xfc, 0x62, 0x24, 0x57, 0x71, (byte)0xbf,
+                (byte)0x80, (byte)0xaa, (byte)0xa0, (byte)0x80, (byte)0xa6, 0x33, (byte)0xff, 0x1b,
+                (byte)0xdd, 0x66, 0x0e, (byte)0xb4, 0x4f, 0x36, (byte)0x9a, (byte)0x89, (byte)0xda,
+                0x48, (byte)0xfb, 0x04, 0x1c, 0x55, 0x51, (byte)0xa1, 0x18, (byte)0xde, 0x20,
+                (byte)0xcf, (byte)0xb8, (byte)0xb9, 0x6b, (byte)0x92, (byte)0xe7, (byte)0xa9,
+                (byte)0x94, 0x54, 0x25, (byte)0xba, (byte)0x88, (byte)0x9e, (byte)0x9a, (byte)0xd6,
+                0x45, 0x61, 0x45, 0x22, (byte)0xeb };
+        byte[] actual = FastPBKDF2.hmac("SHA512", UTF8.encode("message"),
+                UTF8.encode("pepper"), 3);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testSha512EmptyMessage () {
+        byte[] expected = new byte[] { (byte)0x9d, (byte)0xd3, 0x31, (byte)0xfc, 0x67, 0x42, 0x1e,
+                0x1d, (byte)0xce, 0x61, (byte)0x9c, (byte)0xbb, (byte)0xb5, 0x17, 0x17, 0x0e, 0x2d,
+                (byte)0xc3, 0x25, 0x49, 0x1d, 0x34, 0x26, 0x42, 0x56, 0x30, (byte)0xc4, (byte)0xc0,
+                0x1f, (byte)0xd0, (byte)0xec, (byte)0xa8, (byte)0xd8, (byte)0xf5, 0x35, (byte)0xd6,
+                (byte)0xb0, 0x55, 0x5a, 0x2a, (byte)0xa4, 0x3e, (byte)0xfb, (byte)0xc9, 0x14, 0x1e,
+                0x3d, (byte)0xd7, (byte)0xed, (byte)0xae, (byte)0xf8, (byte)0xb1, 0x27, (byte)0x8a,
+                (byte)0xc3, 0x4e, (byte)0xab, (byte)0xfc, 0x2d, (byte)0xb7, 0x35, (byte)0xd9,
+                (byte)0x92, (byte)0xee };
+        byte[] actual = FastPBKDF2.hmac("SHA512", new byte[] {}, UTF8.encode("pepper"), 3);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testSha512LongMessage () {
+        byte[] expected = new byte[] { (byte)0xef, (byte)0xc8, (byte)0xe7, 0x34, (byte)0xed, 0x5b,
+                0x56, 0x57, (byte)0xac, 0x22, 0x00, 0x46, 0x75, 0x4b, 0x7d, 0x1d, (byte)0xbe,
+                (byte)0xa0, 0x09, (byte)0x83, (byte)0xf1, 0x32, 0x09, (byte)0xb1, (byte)0xec, 0x1d,
+                0x0e, 0x41, (byte)0x8e, (byte)0x98, (byte)0x80, 0x7c, (byte)0xba, 0x10, 0x26,
+                (byte)0xd3, (byte)0xed, 0x3f, (byte)0xa2, (byte)0xa0, (byte)0x9d, (byte)0xfa, 0x43,
+                (byte)0xc0, 0x74, 0x44, 0x7b, (byte)0xf4, 0x77, 0x7e, 0x70, (byte)0xe4, (byte)0x99,
+                (byte)0x9d, 0x29, (byte)0xd2, (byte)0xc2, (byte)0xf8, 0x4d, (byte)0xc5, 0x15, 0x02,
+                (byte)0xa1, (byte)0x95 };
+        byte[] actual = FastPBKDF2.hmac("SHA512", UTF8.encode(
+                "ThisMessageIsLongerThanSixtyFourCharactersWhichLeadsToTheSituation" +
+                "ThatTheMessageHasToBeHashedWhenCalculatingTheHmac"), UTF8.encode("pepper"), 3);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testSha384 () {
+        byte[] expected = new byte[] { (byte)0xdc, (byte)0xbe, (byte)0xb0, (byte)0xb9, (byte)0x9a,
+                0x4c, (byte)0xf4, (byte)0xd1, (byte)0xc9, (byte)0xc1, (byte)0xe8, (byte)0xf6, 0x30,
+                (byte)0xf3, (byte)0xaa, (byte)0x86, 0x37, (byte)0xc8, (byte)0x90, 0x6f, 0x1c, 0x3e,
+                0x1c, 0x78, (byte)0xfb, 0x4f, 0x46, 0x2b, 0x16, 0x0d, (byte)0xf2, 0x0f, 0x74, 0x35,
+                (byte)0xbd, (byte)0xd6, (byte)0xa9, 0x04, (byte)0xdd, 0x3c, 0x3e, (byte)0xde, 0x7f,
+                (byte)0xf0, 0x4b, (byte)0xc5, 0x3e, (byte)0x90 };
+        byte[] actual = FastPBKDF2.hmac("SHA384", UTF8.encode("message"),
+                UTF8.encode("salt"), 3);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testSha256 () {
+        byte[] expected = new byte[] { (byte)0xdb, 0x78, (byte)0xc5, 0x09, 0x14, 0x44, (byte)0x94,
+                0x0f, (byte)0x96, 0x42, (byte)0xfc, (byte)0xe5, 0x19, 0x09, 0x7e, (byte)0xe7,
+                (byte)0xad, (byte)0xfe, (byte)0xb3, 0x38, (byte)0xfd, 0x69, 0x70, (byte)0x85, 0x51,
+                0x35, 0x53, (byte)0x90, 0x20, (byte)0xb5, 0x3f, (byte)0xad };
+        byte[] actual = FastPBKDF2.hmac("SHA256", UTF8.encode("message"),
+                UTF8.encode("salt"), 3);
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    public void testSameAsJcaForAllBlockBoundaries () {
+        Random random = new Random(4096);
+        int[] lengths = new int[] { 0, 1, 55, 56, 63, 64, 65, 111, 112, 127, 128, 129, 250 };
+        for (String hashFunction : new String[] { "SHA256", "SHA384", "SHA512" }) {
+            for (int keyLength : lengths) {
+                for (int saltLength : lengths) {
+                    byte[] key = new byte[keyLength];
+                    byte[] salt = new byte[saltLength];
+                    random.nextBytes(key);
+                    random.nextBytes(salt);
+                    int iterations = 1 + random.nextInt(5);
+                    assertTrue(hashFunction + " key " + keyLength + " salt " + saltLength,
+                            Arrays.equals(PBKDF2.hmac(hashFunction, key, salt, iterations),
+                                    FastPBKDF2.hmac(hashFunction, key, salt, iterations)));
+                }
+            }
+        }
+    }
+
+    public void testCancelledDerivationReturnsNull () {
+        FastPBKDF2.CancellationSignal cancelled = new FastPBKDF2.CancellationSignal() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+        assertNull(FastPBKDF2.hmac("SHA512", UTF8.encode("message"), UTF8.encode("pepper"),
+                4096, cancelled));
+        assertNotNull(FastPBKDF2.hmac("SHA512", UTF8.encode("message"), UTF8.encode("pepper"),
+                3, cancelled));
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.pinyto.ctSESAM;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.util.Arrays;
+
+/**
+ * Testing the key-generation-key and the keys derived from it.
+ */
+public class KgkManagerTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private KgkManager kgkManager;
+
+    public KgkManagerTest() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        kgkManager = new KgkManager(getActivity().getBaseContext());
+        kgkManager.createNewKgk();
+    }
+
+    public void testSettingsKeyIsCachedUntilSalt2Changes() {
+        byte[] expected = Crypter.createKey(kgkManager.getKgk(), kgkManager.getSalt2());
+        byte[] settingsKey = kgkManager.getSettingsKey();
+        assertTrue(Arrays.equals(expected, settingsKey));
+        Clearer.zero(settingsKey);
+        assertTrue(Arrays.equals(expected, kgkManager.getSettingsKey()));
+        kgkManager.freshIv2();
+        assertTrue(Arrays.equals(expected, kgkManager.getSettingsKey()));
+        kgkManager.freshSalt2();
+        assertTrue(Arrays.equals(
+                Crypter.createKey(kgkManager.getKgk(), kgkManager.getSalt2()),
+                kgkManager.getSettingsKey()));
+        assertFalse(Arrays.equals(expected, kgkManager.getSettingsKey()));
+    }
+
+    public void testNewKgkChangesTheSettingsKey() {
+        byte[] settingsKey = kgkManager.getSettingsKey();
+        kgkManager.createNewKgk();
+        assertFalse(Arrays.equals(settingsKey, kgkManager.getSettingsKey()));
+    }
+
+    public void testResettingAnotherManagerKeepsTheDerivedHashes() {
+        PasswordSetting setting = new PasswordSetting("unit.test");
+        setting.setSalt(UTF8.encode("pepper"));
+        DerivationParameters parameters =
+                new DerivationParameters(setting, kgkManager.getKgkGeneration());
+        DerivedHashCache.getInstance().put(parameters, new byte[] { 1 });
+        KgkManager otherManager = new KgkManager(getActivity().getBaseContext());
+        otherManager.createNewKgk();
+        assertFalse(otherManager.getKgkGeneration() == kgkManager.getKgkGeneration());
+        otherManager.reset();
+        assertEquals(0, otherManager.getKgkGeneration());
+        assertNotNull(DerivedHashCache.getInstance().get(parameters));
+        kgkManager.reset();
+        assertNull(DerivedHashCache.getInstance().get(parameters));
+    }
+
+}
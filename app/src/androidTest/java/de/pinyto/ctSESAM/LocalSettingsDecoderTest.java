@@ -0,0 +1,49 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Tests for the streaming decoder of the local settings.
+ */
+public class LocalSettingsDecoderTest extends TestCase {
+
+    public void testDecode() {
+        String json = "{\"synced\": [\"unit.test\"], \"settings\": {" +
+                "\"unit.test\": {\"domain\": \"unit.test\", \"passwordTemplate\": \"nnnn\", " +
+                "\"cDate\": \"2001-01-01T02:14:12\", \"mDate\": \"2001-01-01T02:14:13\"}, " +
+                "\"other.test\": {\"domain\": \"other.test\", \"username\": \"hugo\"}}}";
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        try {
+            decoder.decode(new StringReader(json));
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals(2, decoder.getSettings().size());
+        assertEquals("nnnn", decoder.getSettings().get("unit.test").getTemplate());
+        assertEquals("2001-01-01T02:14:13",
+                decoder.getSettings().get("unit.test").getModificationDate());
+        assertEquals("hugo", decoder.getSettings().get("other.test").getUsername());
+        assertTrue(decoder.getSyncedDomains().contains("unit.test"));
+        assertFalse(decoder.getSyncedDomains().contains("other.test"));
+    }
+
+    public void testBrokenJsonKeepsDecodedSettings() {
+        String json = "{\"settings\": {\"unit.test\": {\"domain\": \"unit.test\"}, " +
+                "\"other.test\": {\"domain\": ";
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        boolean thrown = false;
+        try {
+            decoder.decode(new StringReader(json));
+        } catch (IOException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+        assertEquals(1, decoder.getSettings().size());
+        assertTrue(decoder.getSettings().containsKey("unit.test"));
+    }
+
+}
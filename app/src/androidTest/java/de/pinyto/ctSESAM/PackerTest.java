@@ -4,6 +4,11 @@ import android.util.Base64;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+
 /**
  * Test the Deflater-based Packer
  */
@@ -26,4 +31,39 @@ public class PackerTest extends TestCase {
         assertEquals("Some packable information", Packer.decompress(compressed));
     }
 
+    public void testDecompressToReader() {
+        byte[] compressed = Packer.compress("Some packable information: äöü°");
+        try {
+            Reader reader = Packer.decompressToReader(compressed);
+            StringBuilder decompressed = new StringBuilder();
+            char[] buffer = new char[8];
+            int count;
+            while ((count = reader.read(buffer)) > 0) {
+                decompressed.append(buffer, 0, count);
+            }
+            reader.close();
+            assertEquals("Some packable information: äöü°", decompressed.toString());
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        assertNull(Packer.decompressToReader(new byte[] {0x00, 0x10, 0x00, 0x00, 0x78}));
+    }
+
+    public void testCompressingStream() {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        try {
+            OutputStream stream = Packer.compressingStream(packed);
+            stream.write(UTF8.encode("Some packable "));
+            stream.write(UTF8.encode("information"));
+            stream.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals(
+                "AAAAGXjaC87PTVUoSEzOTkzKSVXIzEvLL8pNLMnMzwMAedUJrg==\n",
+                Base64.encodeToString(packed.toByteArray(), Base64.DEFAULT));
+    }
+
 }
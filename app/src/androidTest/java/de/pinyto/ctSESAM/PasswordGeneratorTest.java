@@ -119,4 +119,59 @@ public class PasswordGeneratorTest extends TestCase {
         assertTrue(thrown);
     }
 
+    public void testCancelledHashingRaisesError () {
+        byte[] domain = UTF8.encode("unit.test");
+        byte[] username = UTF8.encode("hugo");
+        byte[] kgk = UTF8.encode("secret");
+        byte[] salt = UTF8.encode("pepper");
+        boolean thrown = false;
+        try {
+            new PasswordGenerator(domain, username, kgk, salt, 4096,
+                    new FastPBKDF2.CancellationSignal() {
+                        @Override
+                        public boolean isCancelled() {
+                            return true;
+                        }
+                    });
+        } catch (NotHashedException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
+    public void testGetPasswordIntoArray () {
+        byte[] domain = UTF8.encode("unit.test");
+        byte[] username = UTF8.encode("hugo");
+        byte[] kgk = UTF8.encode("secret");
+        byte[] salt = UTF8.encode("pepper");
+        try {
+            PasswordGenerator pg = new PasswordGenerator(domain, username, kgk, salt, 2);
+            PasswordSetting setting = new PasswordSetting("unit.test");
+            setting.setTemplate("xxaxAnxoxx");
+            char[] password = new char[12];
+            assertEquals(10, pg.getPassword(setting, password));
+            assertEquals("a0b/Q3°[4_", new String(password, 0, 10));
+            assertEquals(10, pg.getPassword(setting, password));
+            assertEquals("a0b/Q3°[4_", new String(password, 0, 10));
+        } catch (NotHashedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void testGetPasswordIntoTooShortArrayRaisesError () {
+        boolean thrown = false;
+        try {
+            PasswordGenerator pg = new PasswordGenerator(
+                    new byte[] {}, new byte[] {}, new byte[] {}, new byte[] {}, 2);
+            PasswordSetting setting = new PasswordSetting("unit.test");
+            setting.setTemplate("xxaxAnxoxx");
+            pg.getPassword(setting, new char[9]);
+        } catch (NotHashedException e) {
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            thrown = true;
+        }
+        assertTrue(thrown);
+    }
+
 }
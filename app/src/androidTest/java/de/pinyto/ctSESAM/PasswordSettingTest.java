@@ -1,13 +1,17 @@
 package de.pinyto.ctSESAM;
 
 import android.util.Base64;
+import android.util.JsonReader;
 
 import junit.framework.TestCase;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
 
 /**
  * Testing the setting container class.
@@ -45,12 +49,23 @@ public class PasswordSettingTest extends TestCase {
 
     public void testGetCharacterSet() {
         PasswordSetting s = new PasswordSetting("unit.test");
-        assertEquals("2", s.getCharacterSet().get(2));
+        assertEquals('2', s.getCharacterSet().charAt(2));
         s.setExtraCharacterSet("axFLp0");
         s.setTemplate("oxxx");
         assertEquals(6, s.getCharacterSet().size());
-        assertEquals("F", s.getCharacterSet().get(2));
-        assertEquals("0", s.getCharacterSet().get(5));
+        assertEquals('F', s.getCharacterSet().charAt(2));
+        assertEquals('0', s.getCharacterSet().charAt(5));
+    }
+
+    public void testCharacterSetsAreShared() {
+        PasswordSetting s1 = new PasswordSetting("unit.test");
+        PasswordSetting s2 = new PasswordSetting("other.test");
+        assertSame(s1.getExtraCharacterSet(), s2.getExtraCharacterSet());
+        assertSame(s1.getCharacterSet(), s2.getCharacterSet());
+        s1.setExtraCharacterSet("axFLp0");
+        s2.setExtraCharacterSet(new String("axFLp0"));
+        assertSame(s1.getExtraCharacterSet(), s2.getExtraCharacterSet());
+        assertSame(s1.getCharacterSet(), s1.getCharacterSet());
     }
 
     public void testSalt() {
@@ -114,6 +129,40 @@ public class PasswordSettingTest extends TestCase {
         assertEquals("xan", s.getTemplate());
     }
 
+    public void testComplexity() {
+        PasswordSetting s = new PasswordSetting("unit.test");
+        assertEquals(6, s.getComplexity());
+        s.setTemplate("nxx");
+        assertEquals(0, s.getComplexity());
+        s.setTemplate("xax");
+        assertEquals(1, s.getComplexity());
+        s.setTemplate("Axx");
+        assertEquals(2, s.getComplexity());
+        s.setTemplate("anx");
+        assertEquals(3, s.getComplexity());
+        s.setTemplate("aAx");
+        assertEquals(4, s.getComplexity());
+        s.setTemplate("nAax");
+        assertEquals(5, s.getComplexity());
+        s.setTemplate("oxx");
+        assertEquals(-1, s.getComplexity());
+        assertEquals("", s.getFullTemplate());
+    }
+
+    public void testCompiledTemplate() {
+        PasswordSetting s = new PasswordSetting("unit.test");
+        s.setTemplate("xanAo");
+        assertTrue(Arrays.equals(new byte[] {PasswordSetting.SET_ALL,
+                PasswordSetting.SET_LOWER_CASE, PasswordSetting.SET_DIGITS,
+                PasswordSetting.SET_UPPER_CASE, PasswordSetting.SET_EXTRA},
+                s.getCompiledTemplate()));
+        assertTrue(s.usesClass(PasswordSetting.CLASS_EXTRA));
+        s.setTemplate("xxn");
+        assertFalse(s.usesClass(PasswordSetting.CLASS_EXTRA));
+        assertTrue(s.usesClass(PasswordSetting.CLASS_DIGITS));
+        assertEquals("0123456789", s.getCharacterSetAsString());
+    }
+
     public void testToJson() {
         PasswordSetting s = new PasswordSetting("unit.test");
         s.setModificationDate("2005-01-01T01:14:12");
@@ -155,6 +204,50 @@ public class PasswordSettingTest extends TestCase {
         }
     }
 
+    public void testLoadFromJsonReader() {
+        String json = "{\"domain\": \"unit.test\", \"mDate\": \"2005-01-01T01:14:12\", " +
+                "\"unknown\": {\"nested\": [1, 2]}, " +
+                "\"iterations\": 5341, \"username\": \"testilinius\", " +
+                "\"passwordTemplate\": \"xnxxAxaoxx\", \"salt\": \"ZmFzY2luYXRpbmc=\", " +
+                "\"extras\": \"#&{}[]()%\", \"cDate\": \"2001-01-01T02:14:12\"}";
+        try {
+            PasswordSetting s = new PasswordSetting("unit.test");
+            s.loadFromJSON(new JsonReader(new StringReader(json)));
+            PasswordSetting expected = new PasswordSetting("unit.test");
+            expected.loadFromJSON(new JSONObject(json));
+            assertEquals("testilinius", s.getUsername());
+            assertEquals("", s.getNotes());
+            assertEquals(5341, s.getIterations());
+            assertEquals("xnxxAxaoxx", s.getTemplate());
+            assertEquals("#&{}[]()%", s.getExtraCharacterSetAsString());
+            assertTrue(Arrays.equals(expected.getSalt(), s.getSalt()));
+            assertEquals("2001-01-01T02:14:12", s.getCreationDate());
+            assertEquals("2005-01-01T01:14:12", s.getModificationDate());
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
+    public void testLoadLegacySettingFromJsonReader() {
+        String json = "{\"domain\": \"unit.test\", \"length\": 12, \"notes\": null, " +
+                "\"usedCharacters\": \"0123456789\", \"mDate\": \"2012-04-13T11:45:10\"}";
+        try {
+            PasswordSetting s = new PasswordSetting("unit.test");
+            s.loadFromJSON(new JsonReader(new StringReader(json)));
+            assertEquals(12, s.getLength());
+            assertEquals("0123456789", s.getExtraCharacterSetAsString());
+            assertEquals(-1, s.getComplexity());
+            assertEquals("2012-04-13T11:45:10", s.getModificationDate());
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
     public void testLoadFromJSON() {
         String json = "{\"domain\": \"unit.test\", \"username\": \"testilinius\", " +
                 "\"notes\": \"interesting note\", \"legacyPassword\": \"rtSr?bS,mi\", " +
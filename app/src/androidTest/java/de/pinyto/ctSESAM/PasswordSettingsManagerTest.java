@@ -1,6 +1,9 @@
 package de.pinyto.ctSESAM;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.test.ActivityInstrumentationTestCase2;
+import android.util.Base64;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -222,4 +225,232 @@ public class PasswordSettingsManagerTest extends ActivityInstrumentationTestCase
         assertEquals("2001-01-01T02:14:13", setting2.getModificationDate());
     }
 
+    public void testReplaceAndDeleteSetting() {
+        PasswordSetting setting = new PasswordSetting("unit.test");
+        setting.setTemplate("nnnn");
+        settingsManager.setSetting(setting);
+        PasswordSetting replacement = new PasswordSetting("unit.test");
+        replacement.setTemplate("aaaaaa");
+        settingsManager.setSetting(replacement);
+        assertTrue(settingsManager.hasSetting("unit.test"));
+        assertSame(replacement, settingsManager.getSetting("unit.test"));
+        int count = 0;
+        for (String domain : settingsManager.getDomainList()) {
+            if (domain.equals("unit.test")) {
+                count++;
+            }
+        }
+        assertEquals(1, count);
+        settingsManager.deleteSetting("unit.test");
+        assertFalse(settingsManager.hasSetting("unit.test"));
+    }
+
+    public void testFindSettingsByUrlAndUsername() {
+        PasswordSetting setting = new PasswordSetting("unit.test");
+        setting.setUrl("https://www.unit.test/login");
+        setting.setUsername("hugo");
+        settingsManager.setSetting(setting);
+        PasswordSetting other = new PasswordSetting("other.unit.test");
+        other.setUrl("unit.test");
+        other.setUsername("fritz");
+        settingsManager.setSetting(other);
+        assertEquals(2, settingsManager.findSettingsByUrl("http://unit.test/").size());
+        assertEquals(0, settingsManager.findSettingsByUrl("http://other.test/").size());
+        assertEquals(1, settingsManager.findSettingsByUsername("hugo").size());
+        assertSame(setting, settingsManager.findSettingsByUsername("hugo").get(0));
+        PasswordSetting changed = new PasswordSetting("unit.test");
+        changed.setUrl("https://changed.test");
+        changed.setUsername("fritz");
+        settingsManager.setSetting(changed);
+        assertEquals(0, settingsManager.findSettingsByUsername("hugo").size());
+        assertEquals(2, settingsManager.findSettingsByUsername("fritz").size());
+        assertSame(changed, settingsManager.findSettingsByUrl("changed.test").get(0));
+        assertEquals(1, settingsManager.findSettingsByUrl("unit.test").size());
+        settingsManager.deleteSetting("other.unit.test");
+        assertEquals(0, settingsManager.findSettingsByUrl("unit.test").size());
+        assertEquals(1, settingsManager.findSettingsByUsername("fritz").size());
+        settingsManager.deleteSetting("unit.test");
+        assertEquals(0, settingsManager.findSettingsByUsername("fritz").size());
+    }
+
+    public void testLoadLocallyRestoresSyncedState() {
+        PasswordSetting synced = new PasswordSetting("synced.unit.test");
+        synced.setModificationDate("2001-01-01T02:14:13");
+        settingsManager.setSetting(synced);
+        settingsManager.setAllSettingsToSynced();
+        PasswordSetting unsynced = new PasswordSetting("unsynced.unit.test");
+        settingsManager.setSetting(unsynced);
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        settingsManager.storeLocalSettings(kgkManager);
+        PasswordSettingsManager settingsManager2 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        PasswordSetting newerLocal = new PasswordSetting("synced.unit.test");
+        newerLocal.setModificationDate("2012-04-13T11:45:10");
+        settingsManager2.setSetting(newerLocal);
+        try {
+            settingsManager2.loadLocalSettings(kgkManager);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertSame(newerLocal, settingsManager2.getSetting("synced.unit.test"));
+        assertFalse(newerLocal.isSynced());
+        assertFalse(settingsManager2.getSetting("unsynced.unit.test").isSynced());
+        PasswordSettingsManager settingsManager3 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        try {
+            settingsManager3.loadLocalSettings(kgkManager);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertTrue(settingsManager3.getSetting("synced.unit.test").isSynced());
+        assertFalse(settingsManager3.getSetting("unsynced.unit.test").isSynced());
+        settingsManager.deleteSetting("synced.unit.test");
+        settingsManager.deleteSetting("unsynced.unit.test");
+        settingsManager.storeLocalSettings(kgkManager);
+    }
+
+    public void testRequestedStoreIsWrittenOnFlush() {
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        settingsManager.storeLocalSettings(kgkManager);
+        PasswordSetting setting = new PasswordSetting("flushed.unit.test");
+        settingsManager.setSetting(setting);
+        settingsManager.requestStoreLocalSettings(kgkManager);
+        setting.setUsername("changed after the request");
+        settingsManager.requestStoreLocalSettings(kgkManager);
+        settingsManager.flushLocalSettings();
+        PasswordSettingsManager settingsManager2 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        KgkManager kgkManager2 = new KgkManager(getActivity().getBaseContext(),
+                kgkManager.exportKeyIv());
+        try {
+            settingsManager2.loadLocalSettings(kgkManager2);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals("changed after the request",
+                settingsManager2.getSetting("flushed.unit.test").getUsername());
+        settingsManager.deleteSetting("flushed.unit.test");
+        settingsManager.storeLocalSettings(kgkManager);
+    }
+
+    public void testLoadSettingsEncryptedWithTheIvOfTheKgkBlock() {
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        kgkManager.storeLocalKgkBlock();
+        byte[] settingsKeyIv = Arrays.copyOf(
+                Crypter.createKey(kgkManager.getKgk(), kgkManager.getSalt2()), 48);
+        System.arraycopy(kgkManager.getIv2(), 0, settingsKeyIv, 32, 16);
+        byte[] encryptedSettings = new Crypter(settingsKeyIv).encrypt(Packer.compress(
+                "{\"settings\": {\"former.unit.test\": {\"domain\": \"former.unit.test\", " +
+                "\"username\": \"hugo\"}}, \"synced\": []}"));
+        SharedPreferences savedDomains = getActivity().getBaseContext().getSharedPreferences(
+                "savedDomains", Context.MODE_PRIVATE);
+        SharedPreferences.Editor savedDomainsEditor = savedDomains.edit();
+        savedDomainsEditor.putString("encryptedSettings",
+                Base64.encodeToString(encryptedSettings, Base64.DEFAULT));
+        savedDomainsEditor.remove("settingsFormat");
+        savedDomainsEditor.apply();
+        try {
+            settingsManager.loadLocalSettings(kgkManager);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals("hugo", settingsManager.getSetting("former.unit.test").getUsername());
+        byte[] salt2 = kgkManager.getSalt2().clone();
+        // The settings are moved without a change.
+        settingsManager.flushLocalSettings();
+        assertTrue(Arrays.equals(salt2, kgkManager.getSalt2()));
+        assertEquals(PasswordSettingsManager.SETTINGS_FORMAT_DATABASE,
+                savedDomains.getInt("settingsFormat", 0));
+        assertFalse(savedDomains.contains("encryptedSettings"));
+        PasswordSettingsManager settingsManager2 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        KgkManager kgkManager2 = new KgkManager(getActivity().getBaseContext(),
+                kgkManager.exportKeyIv());
+        try {
+            settingsManager2.loadLocalSettings(kgkManager2);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals("hugo", settingsManager2.getSetting("former.unit.test").getUsername());
+        settingsManager.deleteSetting("former.unit.test");
+        settingsManager.storeLocalSettings(kgkManager);
+    }
+
+    public void testStoreChangedSettingKeepsTheOthers() {
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        PasswordSetting unchanged = new PasswordSetting("unchanged.unit.test");
+        settingsManager.setSetting(unchanged);
+        PasswordSetting changed = new PasswordSetting("changed.unit.test");
+        settingsManager.setSetting(changed);
+        settingsManager.storeLocalSettings(kgkManager);
+        changed.setUsername("hugo");
+        settingsManager.setSetting(changed);
+        settingsManager.storeLocalSettings(kgkManager);
+        PasswordSettingsManager settingsManager2 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        try {
+            settingsManager2.loadLocalSettings(kgkManager);
+        } catch (WrongPasswordException ex) {
+            ex.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals("hugo", settingsManager2.getSetting("changed.unit.test").getUsername());
+        assertTrue(settingsManager2.hasSetting("unchanged.unit.test"));
+        settingsManager.deleteSetting("changed.unit.test");
+        settingsManager.deleteSetting("unchanged.unit.test");
+        settingsManager.storeLocalSettings(kgkManager);
+    }
+
+    public void testDecodedSettingsAreOnlyAddedWhenApplied() throws Exception {
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        PasswordSetting setting = new PasswordSetting("decoded.unit.test");
+        setting.setUsername("hugo");
+        settingsManager.setSetting(setting);
+        settingsManager.storeLocalSettings(kgkManager);
+        PasswordSettingsManager settingsManager2 = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        PasswordSettingsManager.LoadedSettings loadedSettings =
+                settingsManager2.decodeLocalSettings(kgkManager);
+        assertFalse(settingsManager2.hasSetting("decoded.unit.test"));
+        settingsManager2.applyLocalSettings(kgkManager, loadedSettings);
+        assertEquals("hugo", settingsManager2.getSetting("decoded.unit.test").getUsername());
+        settingsManager.deleteSetting("decoded.unit.test");
+        settingsManager.storeLocalSettings(kgkManager);
+    }
+
+    public void testExportDataIsReusedUntilASettingChanges() {
+        byte[] password = "some secret".getBytes();
+        kgkManager.decryptKgk(password,
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        PasswordSetting setting = new PasswordSetting("export.unit.test");
+        settingsManager.setSetting(setting);
+        long revision = settingsManager.getRevision();
+        byte[] first = settingsManager.getExportData(kgkManager);
+        byte[] second = settingsManager.getExportData(kgkManager);
+        assertTrue(Arrays.equals(first, second));
+        settingsManager.setAllSettingsToSynced();
+        assertEquals(revision, settingsManager.getRevision());
+        assertTrue(Arrays.equals(first, settingsManager.getExportData(kgkManager)));
+        setting.setUsername("hugo");
+        settingsManager.setSetting(setting);
+        assertTrue(settingsManager.getRevision() > revision);
+        assertFalse(Arrays.equals(first, settingsManager.getExportData(kgkManager)));
+        settingsManager.deleteSetting("export.unit.test");
+    }
+
 }
@@ -0,0 +1,79 @@
+package de.pinyto.ctSESAM;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests for the settings database.
+ */
+public class SettingsDatabaseTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    private SettingsDatabase database;
+    private byte[] settingsKey;
+
+    public SettingsDatabaseTest() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        database = new SettingsDatabase(getActivity().getBaseContext());
+        database.clear();
+        settingsKey = Crypter.createKey("unit test key".getBytes(), "pepper".getBytes());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        database.clear();
+        super.tearDown();
+    }
+
+    private LocalSettingsDecoder load(byte[] key) throws WrongPasswordException {
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        database.load(key, decoder);
+        return decoder;
+    }
+
+    public void testWriteReplaceAndDeleteRows() throws Exception {
+        PasswordSetting first = new PasswordSetting("unit.test");
+        first.setSynced(true);
+        database.write(settingsKey, Arrays.asList(first, new PasswordSetting("other.test")),
+                Collections.<String>emptyList(), true);
+        PasswordSetting changed = new PasswordSetting("unit.test");
+        changed.setUsername("hugo");
+        database.write(settingsKey, Collections.singletonList(changed),
+                Collections.singletonList("other.test"), false);
+        LocalSettingsDecoder decoder = load(settingsKey);
+        assertEquals(1, decoder.getSettings().size());
+        assertEquals("hugo", decoder.getSettings().get("unit.test").getUsername());
+        assertFalse(decoder.getSyncedDomains().contains("unit.test"));
+        database.write(settingsKey, Collections.singletonList(new PasswordSetting("new.test")),
+                Collections.<String>emptyList(), true);
+        decoder = load(settingsKey);
+        assertEquals(1, decoder.getSettings().size());
+        assertTrue(decoder.getSettings().containsKey("new.test"));
+    }
+
+    public void testWrongKey() throws IOException {
+        database.write(settingsKey, Collections.singletonList(new PasswordSetting("unit.test")),
+                Collections.<String>emptyList(), true);
+        byte[] wrongKey = Crypter.createKey("wrong key".getBytes(), "pepper".getBytes());
+        try {
+            load(wrongKey);
+            assertTrue(false);
+        } catch (WrongPasswordException e) {
+            assertNotNull(e);
+        }
+        try {
+            database.write(wrongKey, Collections.singletonList(new PasswordSetting("other.test")),
+                    Collections.<String>emptyList(), false);
+            assertTrue(false);
+        } catch (IOException e) {
+            assertNotNull(e);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the streaming encoder of the settings.
+ */
+public class SettingsEncoderTest extends TestCase {
+
+    private List<PasswordSetting> createSettings() {
+        List<PasswordSetting> settings = new ArrayList<>();
+        PasswordSetting first = new PasswordSetting("unit.test");
+        first.setUrl("https://unit.test/login");
+        first.setUsername("Hugo");
+        first.setLegacyPassword("Wamma");
+        first.setNotes("Some note with \"quotes\" and äöü.");
+        first.setIterations(213);
+        first.setTemplate("xxnaAo");
+        first.setExtraCharacterSet("#!°");
+        first.setCreationDate("2001-01-01T02:14:12");
+        first.setModificationDate("2005-01-01T01:14:12");
+        first.setSynced(true);
+        settings.add(first);
+        PasswordSetting second = new PasswordSetting("other.test");
+        second.setCreationDate("2003-01-01T02:14:12");
+        second.setModificationDate("2003-01-01T02:14:12");
+        settings.add(second);
+        return settings;
+    }
+
+    private String encode(List<PasswordSetting> settings, boolean withSyncedDomains) {
+        StringWriter json = new StringWriter();
+        try {
+            new SettingsEncoder(settings, withSyncedDomains).encode(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        return json.toString();
+    }
+
+    public void testExportObjectHasTheFieldsOfToJSON() {
+        List<PasswordSetting> settings = this.createSettings();
+        try {
+            JSONObject encoded = new JSONObject(this.encode(settings, false));
+            assertEquals(2, encoded.length());
+            for (PasswordSetting setting : settings) {
+                JSONObject expected = setting.toJSON();
+                JSONObject actual = encoded.getJSONObject(setting.getDomain());
+                assertEquals(expected.length(), actual.length());
+                for (String key : new String[] {"domain", "url", "username", "legacyPassword",
+                        "notes", "salt", "cDate", "mDate", "extras", "passwordTemplate"}) {
+                    assertEquals(expected.has(key), actual.has(key));
+                    if (expected.has(key)) {
+                        assertEquals(expected.getString(key), actual.getString(key));
+                    }
+                }
+                assertEquals(expected.getInt("iterations"), actual.getInt("iterations"));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
+    public void testSlashIsNotEscaped() {
+        List<PasswordSetting> settings = this.createSettings();
+        String json = this.encode(settings, false);
+        assertTrue(json.contains("\"https://unit.test/login\""));
+        try {
+            assertEquals(settings.get(0).toJSON().getString("url"),
+                    new JSONObject(json).getJSONObject("unit.test").getString("url"));
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
+    public void testLocalStructureCanBeDecoded() {
+        List<PasswordSetting> settings = this.createSettings();
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        try {
+            decoder.decode(new StringReader(this.encode(settings, true)));
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        assertEquals(2, decoder.getSettings().size());
+        PasswordSetting decoded = decoder.getSettings().get("unit.test");
+        assertEquals("Hugo", decoded.getUsername());
+        assertEquals("Some note with \"quotes\" and äöü.", decoded.getNotes());
+        assertEquals(213, decoded.getIterations());
+        assertEquals("#!°", decoded.getExtraCharacterSetAsString());
+        assertEquals("2005-01-01T01:14:12", decoded.getModificationDate());
+        assertTrue(Arrays.equals(settings.get(0).getSalt(), decoded.getSalt()));
+        assertTrue(decoder.getSyncedDomains().contains("unit.test"));
+        assertFalse(decoder.getSyncedDomains().contains("other.test"));
+    }
+
+    public void testEncryptIsTheSameAsEncryptingTheCompressedString() {
+        List<PasswordSetting> settings = this.createSettings();
+        String json = this.encode(settings, true);
+        byte[] key = Crypter.createKey(UTF8.encode("secret"), UTF8.encode("pepper"));
+        Crypter crypter = new Crypter(key.clone());
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try {
+            new SettingsEncoder(settings, true).encrypt(crypter, encrypted);
+        } catch (IOException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+        assertTrue(Arrays.equals(
+                new Crypter(key.clone()).encrypt(Packer.compress(json)),
+                encrypted.toByteArray()));
+        assertEquals(json, Packer.decompress(
+                new Crypter(key).decrypt(encrypted.toByteArray())));
+    }
+
+}
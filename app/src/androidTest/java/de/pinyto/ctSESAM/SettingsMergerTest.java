@@ -0,0 +1,83 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tests for merging remote settings into the local settings.
+ */
+public class SettingsMergerTest extends TestCase {
+
+    private PasswordSetting createSetting(String domain, String mDate, boolean synced) {
+        PasswordSetting setting = new PasswordSetting(domain);
+        setting.setCreationDate("2001-01-01T02:14:12");
+        setting.setModificationDate(mDate);
+        setting.setSynced(synced);
+        return setting;
+    }
+
+    public void testMerge() {
+        Map<String, PasswordSetting> local = new HashMap<>();
+        local.put("older.local", createSetting("older.local", "2001-01-01T02:14:13", true));
+        local.put("newer.local", createSetting("newer.local", "2012-04-13T11:45:10", true));
+        local.put("deleted.remote", createSetting("deleted.remote", "2001-01-01T02:14:13", true));
+        local.put("new.local", createSetting("new.local", "2001-01-01T02:14:13", false));
+        try {
+            JSONObject remote = new JSONObject();
+            JSONObject older = createSetting("older.local", "2012-04-13T11:45:10", false).toJSON();
+            older.put("iterations", 4097);
+            remote.put("older.local", older);
+            remote.put("newer.local",
+                    createSetting("newer.local", "2001-01-01T02:14:13", false).toJSON());
+            remote.put("new.remote",
+                    createSetting("new.remote", "2001-01-01T02:14:13", false).toJSON());
+            SettingsMerger.Result result = SettingsMerger.merge(local, remote);
+            assertEquals(1, result.getAdded().size());
+            assertEquals("new.remote", result.getAdded().get(0));
+            assertEquals(1, result.getUpdatedLocally().size());
+            assertEquals("older.local", result.getUpdatedLocally().get(0));
+            assertEquals(1, result.getNeedsRemoteUpdate().size());
+            assertEquals("newer.local", result.getNeedsRemoteUpdate().get(0));
+            assertEquals(1, result.getDeletedRemotely().size());
+            assertEquals("deleted.remote", result.getDeletedRemotely().get(0));
+            assertTrue(result.requiresRemoteUpdate());
+            assertEquals(5, local.size());
+            assertEquals(4097, local.get("older.local").getIterations());
+            assertEquals("2012-04-13T11:45:10", local.get("older.local").getModificationDate());
+            assertTrue(local.get("older.local").isSynced());
+            assertTrue(local.get("new.remote").isSynced());
+            assertFalse(local.get("new.local").isSynced());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        } catch (ParseException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
+    public void testMergeWithoutChanges() {
+        Map<String, PasswordSetting> local = new HashMap<>();
+        try {
+            JSONObject remote = new JSONObject();
+            remote.put("new.remote",
+                    createSetting("new.remote", "2001-01-01T02:14:13", false).toJSON());
+            SettingsMerger.Result result = SettingsMerger.merge(local, remote);
+            assertFalse(result.requiresRemoteUpdate());
+            assertEquals(1, local.size());
+        } catch (JSONException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        } catch (ParseException e) {
+            e.printStackTrace();
+            assertTrue(false);
+        }
+    }
+
+}
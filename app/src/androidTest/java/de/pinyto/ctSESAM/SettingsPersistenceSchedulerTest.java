@@ -0,0 +1,64 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the coalescing of the background writes.
+ */
+public class SettingsPersistenceSchedulerTest extends TestCase {
+
+    private final AtomicInteger prepared = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+
+    private SettingsPersistenceScheduler createScheduler() {
+        return new SettingsPersistenceScheduler(
+                new SettingsPersistenceScheduler.WritePreparer() {
+            @Override
+            public Runnable prepareWrite(KgkManager kgkManager) {
+                prepared.incrementAndGet();
+                return new Runnable() {
+                    @Override
+                    public void run() {
+                        written.incrementAndGet();
+                    }
+                };
+            }
+        });
+    }
+
+    public void testRequestsAreCoalesced() {
+        SettingsPersistenceScheduler scheduler = this.createScheduler();
+        assertFalse(scheduler.isDirty());
+        scheduler.request(null);
+        scheduler.request(null);
+        scheduler.request(null);
+        assertTrue(scheduler.isDirty());
+        scheduler.flush();
+        assertFalse(scheduler.isDirty());
+        assertEquals(1, prepared.get());
+        assertEquals(1, written.get());
+    }
+
+    public void testFlushWithoutRequestWritesNothing() {
+        SettingsPersistenceScheduler scheduler = this.createScheduler();
+        scheduler.flush();
+        scheduler.request(null);
+        scheduler.flush();
+        scheduler.flush();
+        assertEquals(1, prepared.get());
+        assertEquals(1, written.get());
+    }
+
+    public void testDiscardDropsThePendingWrite() {
+        SettingsPersistenceScheduler scheduler = this.createScheduler();
+        scheduler.request(null);
+        scheduler.discard();
+        assertFalse(scheduler.isDirty());
+        scheduler.flush();
+        assertEquals(0, prepared.get());
+        assertEquals(0, written.get());
+    }
+
+}
@@ -0,0 +1,33 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Testing the measurement of stages.
+ */
+public class StageTimerTest extends TestCase {
+
+    public void testStagesAreMeasuredInOrder() throws InterruptedException {
+        StageTimer timer = new StageTimer();
+        timer.start("first");
+        Thread.sleep(20);
+        timer.start("second");
+        timer.stop();
+        Map<String, Long> durations = timer.getDurations();
+        assertEquals(Arrays.asList("first", "second"),
+                Arrays.asList(durations.keySet().toArray()));
+        assertTrue(durations.get("first") >= 20);
+        assertTrue(timer.toString().startsWith("first: "));
+    }
+
+    public void testStopWithoutStageDoesNothing() {
+        StageTimer timer = new StageTimer();
+        timer.stop();
+        assertTrue(timer.getDurations().isEmpty());
+        assertEquals("", timer.toString());
+    }
+
+}
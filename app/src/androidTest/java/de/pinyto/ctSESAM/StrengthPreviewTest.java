@@ -0,0 +1,77 @@
+package de.pinyto.ctSESAM;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the passwords of the SmartSelector tiles.
+ */
+public class StrengthPreviewTest extends TestCase {
+
+    public void testPreviewMatchesSinglePasswords() {
+        try {
+            PasswordGenerator pg = new PasswordGenerator(UTF8.encode("unit.test"),
+                    UTF8.encode("hugo"), UTF8.encode("secret"), UTF8.encode("pepper"), 2);
+            PasswordSetting setting = new PasswordSetting("unit.test");
+            setting.setExtraCharacterSet("#!$%&");
+            StrengthPreview preview = new StrengthPreview(pg, setting);
+            for (int length = StrengthPreview.MIN_LENGTH; length <= StrengthPreview.MAX_LENGTH;
+                 length++) {
+                for (int complexity = 0; complexity < StrengthPreview.COMPLEXITY_COUNT;
+                     complexity++) {
+                    String template = preview.getTemplate(length, complexity);
+                    assertEquals(length, template.length());
+                    setting.setTemplate(template);
+                    assertEquals(complexity, setting.getComplexity());
+                    assertEquals(pg.getPassword(setting),
+                            preview.getPassword(length, complexity));
+                }
+            }
+        } catch (NotHashedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void testClearKeepsTheSaltOfTheSetting() {
+        try {
+            PasswordGenerator pg = new PasswordGenerator(UTF8.encode("unit.test"),
+                    UTF8.encode("hugo"), UTF8.encode("secret"), UTF8.encode("pepper"), 2);
+            PasswordSetting setting = new PasswordSetting("unit.test");
+            setting.setSalt(UTF8.encode("pepper"));
+            setting.setUsername("hugo");
+            StrengthPreview preview = new StrengthPreview(pg, setting);
+            assertTrue(preview.isValidFor(pg, setting));
+            preview.clear();
+            assertFalse(preview.isValidFor(pg, setting));
+            assertEquals("pepper", new String(setting.getSalt()));
+            assertEquals("hugo", setting.getUsername());
+        } catch (NotHashedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void testTemplateDependsOnSalt() {
+        byte[] salt = UTF8.encode("pepper");
+        assertEquals(StrengthPreview.createTemplate(20, 6, salt),
+                StrengthPreview.createTemplate(20, 6, salt));
+        assertEquals(1, StrengthPreview.createTemplate(10, 0, salt).replace("x", "").length());
+    }
+
+    public void testIsValidFor() {
+        try {
+            PasswordGenerator pg = new PasswordGenerator(UTF8.encode("unit.test"),
+                    UTF8.encode("hugo"), UTF8.encode("secret"), UTF8.encode("pepper"), 2);
+            PasswordSetting setting = new PasswordSetting("unit.test");
+            StrengthPreview preview = new StrengthPreview(pg, setting);
+            assertTrue(preview.isValidFor(pg, setting));
+            setting.setExtraCharacterSet("#!$%&");
+            assertFalse(preview.isValidFor(pg, setting));
+            setting.setExtraCharacterSet(null);
+            assertTrue(preview.isValidFor(pg, setting));
+            setting.setSalt(UTF8.encode("other salt"));
+            assertFalse(preview.isValidFor(pg, setting));
+        } catch (NotHashedException e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package de.pinyto.ctSESAM;
+
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * Testing the session which shares the unlocked managers.
+ */
+public class UnlockedSessionTest extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public UnlockedSessionTest() {
+        super(MainActivity.class);
+    }
+
+    private UnlockedSession openSession() {
+        KgkManager kgkManager = new KgkManager(getActivity().getBaseContext());
+        kgkManager.decryptKgk("some secret".getBytes(),
+                kgkManager.getKgkCrypterSalt(), kgkManager.getLocalKgkBlock());
+        PasswordSettingsManager settingsManager = new PasswordSettingsManager(
+                getActivity().getBaseContext());
+        return UnlockedSession.open(kgkManager, settingsManager);
+    }
+
+    /**
+     * Waits until the loaded settings of a locked session are cleared on the main thread.
+     */
+    private void waitForClearedSettings() {
+        SettingsPersistenceScheduler.waitForWrites();
+        getInstrumentation().waitForIdleSync();
+    }
+
+    public void testActivitiesShareTheManagers() {
+        UnlockedSession session = openSession();
+        PasswordSetting setting = new PasswordSetting("session.unit.test");
+        setting.setUsername("hugo");
+        session.getSettingsManager().setSetting(setting);
+        assertSame(session, UnlockedSession.getCurrent());
+        assertEquals("hugo", UnlockedSession.getCurrent().getSettingsManager()
+                .getSetting("session.unit.test").getUsername());
+        session.getSettingsManager().deleteSetting("session.unit.test");
+        UnlockedSession.lockCurrent();
+    }
+
+    public void testLockZeroesTheKgk() {
+        UnlockedSession session = openSession();
+        byte[] kgk = session.getKgkManager().getKgk();
+        session.touch();
+        session.lock();
+        assertTrue(session.isLocked());
+        assertFalse(session.getKgkManager().hasKgk());
+        for (byte b : kgk) {
+            assertEquals(0x00, b);
+        }
+        assertNull(UnlockedSession.getCurrent());
+    }
+
+    public void testLockClearsTheLoadedSettings() throws Exception {
+        UnlockedSession session = openSession();
+        PasswordSettingsManager settingsManager = session.getSettingsManager();
+        PasswordSetting setting = new PasswordSetting("session.unit.test");
+        setting.setSalt(UTF8.encode("pepper"));
+        setting.setLegacyPassword("secret");
+        settingsManager.setSetting(setting);
+        settingsManager.requestStoreLocalSettings(session.getKgkManager());
+        assertFalse(UnlockedSession.isLocked(settingsManager));
+        session.lock();
+        assertTrue(UnlockedSession.isLocked(settingsManager));
+        waitForClearedSettings();
+        assertEquals(0, settingsManager.getDomainList().length);
+        assertFalse(setting.hasLegacyPassword());
+        for (byte b : setting.getSalt()) {
+            assertEquals(0x00, b);
+        }
+        UnlockedSession session2 = openSession();
+        session2.getSettingsManager().loadLocalSettings(session2.getKgkManager());
+        assertEquals("secret", session2.getSettingsManager().getSetting("session.unit.test")
+                .getLegacyPassword());
+        session2.getSettingsManager().deleteSetting("session.unit.test");
+        session2.getSettingsManager().storeLocalSettings(session2.getKgkManager());
+        UnlockedSession.lockCurrent();
+    }
+
+    public void testLockTellsTheAttachedActivity() {
+        UnlockedSession session = openSession();
+        final int[] calls = {0};
+        UnlockedSession.OnLockListener listener = new UnlockedSession.OnLockListener() {
+            @Override
+            public void onSessionLocked() {
+                calls[0]++;
+            }
+        };
+        session.attach(listener);
+        session.lock();
+        assertEquals(1, calls[0]);
+        session.lock();
+        assertEquals(1, calls[0]);
+        UnlockedSession second = openSession();
+        second.attach(listener);
+        second.detach(listener);
+        second.lock();
+        assertEquals(1, calls[0]);
+    }
+
+    public void testOpeningASessionLocksTheFormerOne() {
+        UnlockedSession first = openSession();
+        UnlockedSession second = openSession();
+        assertTrue(first.isLocked());
+        assertFalse(second.isLocked());
+        assertSame(second, UnlockedSession.getCurrent());
+        UnlockedSession.lockCurrent();
+        assertTrue(second.isLocked());
+    }
+
+}
@@ -0,0 +1,53 @@
+package de.pinyto.ctSESAM;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * An immutable set of characters which are used to build a password. Instances are interned:
+ * get returns the same object for the same characters so settings with equal sets share one
+ * table. Unused sets are dropped from the cache by the garbage collector.
+ */
+public final class CharacterSet {
+    private static final Map<String, WeakReference<CharacterSet>> cache = new WeakHashMap<>();
+    private final String string;
+    private final char[] characters;
+
+    private CharacterSet(String characters) {
+        this.string = characters;
+        this.characters = characters.toCharArray();
+    }
+
+    /**
+     * Returns the interned set for these characters.
+     *
+     * @param characters the characters in the order used for the password
+     * @return the shared CharacterSet
+     */
+    public static CharacterSet get(String characters) {
+        synchronized (cache) {
+            WeakReference<CharacterSet> reference = cache.get(characters);
+            CharacterSet set = reference == null ? null : reference.get();
+            if (set == null) {
+                set = new CharacterSet(characters);
+                // The key has to be the string of the set so the entry lives as long as the set.
+                cache.put(set.string, new WeakReference<>(set));
+            }
+            return set;
+        }
+    }
+
+    public int size() {
+        return this.characters.length;
+    }
+
+    public char charAt(int index) {
+        return this.characters[index];
+    }
+
+    @Override
+    public String toString() {
+        return this.string;
+    }
+}
@@ -15,6 +15,30 @@ public class Clearer {
         }
     }
 
+    public static void zero(int[] a) {
+        if (a != null) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = 0;
+            }
+        }
+    }
+
+    public static void zero(long[] a) {
+        if (a != null) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = 0;
+            }
+        }
+    }
+
+    public static void zero(char[] a) {
+        if (a != null) {
+            for (int i = 0; i < a.length; i++) {
+                a[i] = 0;
+            }
+        }
+    }
+
     public static void zero(Editable e) {
         CharSequence zero = "0";
         for (int i = 0; i < e.length(); i++) {
@@ -1,16 +1,20 @@
 package de.pinyto.ctSESAM;
 
 import android.os.AsyncTask;
+import android.util.Log;
 
 import java.lang.ref.WeakReference;
 
 /**
- * Create a new kgk block.
+ * Create a new kgk block. The key derivation, the creation of the KGK and reading the
+ * settings run in the background. The durations of the stages are logged.
  */
-class CreateNewKgkTask extends AsyncTask<byte[], byte[], byte[]> {
+class CreateNewKgkTask
+        extends AsyncTask<byte[], byte[], PasswordSettingsManager.LoadedSettings> {
     private KgkManager kgkManager;
     private PasswordSettingsManager settingsManager;
     private WeakReference<OnNewKgkFinishedListener> finishedListenerWeakRef;
+    private final StageTimer timer = new StageTimer();
 
     CreateNewKgkTask(OnNewKgkFinishedListener finishedListener,
                      KgkManager kgkManager,
@@ -22,30 +26,44 @@ class CreateNewKgkTask extends AsyncTask<byte[], byte[], byte[]> {
     }
 
     @Override
-    protected byte[] doInBackground(byte[]... params) {
+    protected PasswordSettingsManager.LoadedSettings doInBackground(byte[]... params) {
         byte[] password = params[0];
         byte[] salt = params[1];
+        timer.start("createIvKey");
         byte[] ivKey = Crypter.createIvKey(password, salt);
         for (int i = 0; i < password.length; i++) {
             password[i] = 0x00;
         }
-        return ivKey;
-    }
-
-    @Override
-    protected void onPostExecute(byte[] ivKey) {
+        timer.start("createKgk");
         kgkManager.createAndStoreNewKgkBlock(new Crypter(ivKey));
-        OnNewKgkFinishedListener finishedListener = finishedListenerWeakRef.get();
+        timer.start("deriveSettingsKey");
+        Clearer.zero(kgkManager.getSettingsKey());
+        timer.start("loadSettings");
         try {
-            settingsManager.loadLocalSettings(kgkManager);
-            if (finishedListener != null) {
-                finishedListener.onFinished(true);
-            }
+            return settingsManager.decodeLocalSettings(kgkManager);
         } catch (WrongPasswordException passwordError) {
             passwordError.printStackTrace();
+            return null;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    protected void onPostExecute(PasswordSettingsManager.LoadedSettings loadedSettings) {
+        OnNewKgkFinishedListener finishedListener = finishedListenerWeakRef.get();
+        if (loadedSettings == null) {
             if (finishedListener != null) {
                 finishedListener.onFinished(false);
             }
+            return;
+        }
+        timer.start("applySettings");
+        settingsManager.applyLocalSettings(kgkManager, loadedSettings);
+        timer.stop();
+        Log.d("Unlock timings", loadedSettings.size() + " settings, " + timer);
+        if (finishedListener != null) {
+            finishedListener.onFinished(true);
         }
     }
 
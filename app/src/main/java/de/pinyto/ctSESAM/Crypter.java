@@ -2,6 +2,7 @@ package de.pinyto.ctSESAM;
 
 import android.util.Log;
 
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -11,7 +12,9 @@ import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
@@ -30,11 +33,11 @@ public class Crypter {
     }
 
     public static byte[] createKey(byte[] password, byte[] salt) {
-        return PBKDF2.hmac("SHA256", password, salt, 1024);
+        return FastPBKDF2.hmac("SHA256", password, salt, 1024);
     }
 
     public static byte[] createIvKey(byte[] password, byte[] salt) {
-        return PBKDF2.hmac("SHA384", password, salt, 32768);
+        return FastPBKDF2.hmac("SHA384", password, salt, 32768);
     }
 
     public static byte[] createSalt() {
@@ -51,6 +54,23 @@ public class Crypter {
         return salt;
     }
 
+    /**
+     * Looks up the implementations of AES and HMAC so the first decryption does not wait
+     * for the security providers.
+     */
+    public static void loadProviders() {
+        try {
+            Cipher.getInstance("AES/CBC/PKCS7Padding");
+            Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            Log.d("Encryption error", "AES/CBC or HmacSHA256 is not implemented.");
+            e.printStackTrace();
+        } catch (NoSuchPaddingException e) {
+            Log.d("Encryption error", "PKCS7Padding is not implemented.");
+            e.printStackTrace();
+        }
+    }
+
     public byte[] encrypt(byte[] data) {
         return this.encrypt(data, "PKCS7Padding");
     }
@@ -83,6 +103,36 @@ public class Crypter {
         return new byte[] {};
     }
 
+    /**
+     * Returns a stream which encrypts everything that is written to it into out. The
+     * encrypted bytes are the same as with encrypt(data). The last block is written when the
+     * stream is closed, which also closes out.
+     *
+     * @param out receives the encrypted data
+     * @return the encrypting stream or null if AES/CBC is not available
+     */
+    public OutputStream encryptingStream(OutputStream out) {
+        SecretKeySpec skeySpec = new SecretKeySpec(key, "AES");
+        try {
+            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS7Padding");
+            cipher.init(Cipher.ENCRYPT_MODE, skeySpec, new IvParameterSpec(this.iv));
+            return new CipherOutputStream(out, cipher);
+        } catch (NoSuchAlgorithmException e) {
+            Log.d("Encryption error", "AES/CBC is not implemented.");
+            e.printStackTrace();
+        } catch (NoSuchPaddingException e) {
+            Log.d("Encryption error", "PKCS7Padding is not implemented.");
+            e.printStackTrace();
+        } catch (InvalidAlgorithmParameterException e) {
+            Log.d("Encryption error", "Invalid IV.");
+            e.printStackTrace();
+        } catch (InvalidKeyException e) {
+            Log.d("Encryption error", "Invalid key.");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
     public byte[] decrypt(byte[] data) {
         try {
             return this.decrypt(data, "PKCS7Padding");
@@ -0,0 +1,65 @@
+package de.pinyto.ctSESAM;
+
+import java.util.Arrays;
+
+/**
+ * The parts of a PasswordSetting which go into the hash of the PasswordGenerator together with
+ * the generation of the KGK. Two settings with equal parameters produce the same hash.
+ */
+class DerivationParameters {
+    private final String domain;
+    private final String username;
+    private final byte[] salt;
+    private final int iterations;
+    private final int kgkGeneration;
+
+    DerivationParameters(PasswordSetting setting, int kgkGeneration) {
+        this.domain = setting.getDomain();
+        this.username = setting.getUsername();
+        this.salt = Arrays.copyOf(setting.getSalt(), setting.getSalt().length);
+        this.iterations = setting.getIterations();
+        this.kgkGeneration = kgkGeneration;
+    }
+
+    public String getDomain() {
+        return this.domain;
+    }
+
+    public String getUsername() {
+        return this.username;
+    }
+
+    public byte[] getSalt() {
+        return this.salt;
+    }
+
+    public int getIterations() {
+        return this.iterations;
+    }
+
+    public int getKgkGeneration() {
+        return this.kgkGeneration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DerivationParameters)) return false;
+        DerivationParameters other = (DerivationParameters) o;
+        return this.iterations == other.iterations &&
+                this.kgkGeneration == other.kgkGeneration &&
+                this.domain.equals(other.domain) &&
+                this.username.equals(other.username) &&
+                Arrays.equals(this.salt, other.salt);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = this.domain.hashCode();
+        result = 31 * result + this.username.hashCode();
+        result = 31 * result + Arrays.hashCode(this.salt);
+        result = 31 * result + this.iterations;
+        result = 31 * result + this.kgkGeneration;
+        return result;
+    }
+}
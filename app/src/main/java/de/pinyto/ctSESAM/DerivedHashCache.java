@@ -0,0 +1,149 @@
+package de.pinyto.ctSESAM;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Keeps the hashes of recently used PasswordGenerators in memory so a domain which was shown a
+ * moment ago does not need the full PBKDF2 again. The cache holds at most maxEntries hashes and
+ * drops every hash which was not used for idleTimeoutMillis. Hashes are zeroed when they leave
+ * the cache. The hashes are keyed by the generation of the KGK they were derived from and
+ * KgkManager drops the hashes of its generation when its KGK is replaced or reset.
+ */
+class DerivedHashCache {
+    static final int MAX_ENTRIES = 32;
+    static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final DerivedHashCache instance =
+            new DerivedHashCache(MAX_ENTRIES, IDLE_TIMEOUT_MILLIS);
+    private final int maxEntries;
+    private final long idleTimeoutMillis;
+    private final LinkedHashMap<DerivationParameters, Entry> entries;
+    private Timer expiryTimer;
+
+    DerivedHashCache(int maxEntries, long idleTimeoutMillis) {
+        this.maxEntries = maxEntries;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        // access order: the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    static DerivedHashCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns a copy of the cached hash or null if there is none.
+     */
+    public synchronized byte[] get(DerivationParameters parameters) {
+        this.removeExpired();
+        Entry entry = this.entries.get(parameters);
+        if (entry == null) {
+            return null;
+        }
+        entry.lastAccess = this.now();
+        return entry.hashValue.clone();
+    }
+
+    /**
+     * Stores a copy of the hash.
+     */
+    public synchronized void put(DerivationParameters parameters, byte[] hashValue) {
+        Entry old = this.entries.put(parameters, new Entry(hashValue.clone(), this.now()));
+        if (old != null) {
+            Clearer.zero(old.hashValue);
+        }
+        while (this.entries.size() > this.maxEntries) {
+            Iterator<Map.Entry<DerivationParameters, Entry>> eldest =
+                    this.entries.entrySet().iterator();
+            Clearer.zero(eldest.next().getValue().hashValue);
+            eldest.remove();
+        }
+        this.startExpiryTimer();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Zeroes and removes all hashes.
+     */
+    public synchronized void clear() {
+        for (Entry entry : this.entries.values()) {
+            Clearer.zero(entry.hashValue);
+        }
+        this.entries.clear();
+        this.stopExpiryTimer();
+    }
+
+    /**
+     * Zeroes and removes the hashes which were derived from the given KGK generation.
+     */
+    public synchronized void clear(int kgkGeneration) {
+        Iterator<Map.Entry<DerivationParameters, Entry>> iterator =
+                this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<DerivationParameters, Entry> entry = iterator.next();
+            if (entry.getKey().getKgkGeneration() == kgkGeneration) {
+                Clearer.zero(entry.getValue().hashValue);
+                iterator.remove();
+            }
+        }
+        if (this.entries.isEmpty()) {
+            this.stopExpiryTimer();
+        }
+    }
+
+    synchronized void removeExpired() {
+        long now = this.now();
+        Iterator<Entry> iterator = this.entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (now - entry.lastAccess >= this.idleTimeoutMillis) {
+                Clearer.zero(entry.hashValue);
+                iterator.remove();
+            }
+        }
+        if (this.entries.isEmpty()) {
+            this.stopExpiryTimer();
+        }
+    }
+
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private void startExpiryTimer() {
+        if (this.expiryTimer != null) {
+            return;
+        }
+        this.expiryTimer = new Timer("DerivedHashCache expiry", true);
+        long period = Math.max(1, this.idleTimeoutMillis / 4);
+        this.expiryTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                removeExpired();
+            }
+        }, period, period);
+    }
+
+    private void stopExpiryTimer() {
+        if (this.expiryTimer != null) {
+            this.expiryTimer.cancel();
+            this.expiryTimer = null;
+        }
+    }
+
+    private static class Entry {
+        final byte[] hashValue;
+        long lastAccess;
+
+        Entry(byte[] hashValue, long lastAccess) {
+            this.hashValue = hashValue;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
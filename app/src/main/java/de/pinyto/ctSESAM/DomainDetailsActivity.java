@@ -21,6 +21,9 @@ public class DomainDetailsActivity extends SyncServiceEnabledActivity
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (isFinishing()) {
+            return;
+        }
         setContentView(R.layout.activity_domain_details);
         Toolbar upAndCopyToolbar = findViewById(R.id.up_and_copy_toolbar);
         setSupportActionBar(upAndCopyToolbar);
@@ -46,6 +49,9 @@ public class DomainDetailsActivity extends SyncServiceEnabledActivity
     @Override
     protected void onResume() {
         super.onResume();
+        if (isFinishing()) {
+            return;
+        }
         domainDetailsFragment.setSettingsManagerAndKgkManager(settingsManager, kgkManager);
     }
 
@@ -87,7 +93,6 @@ public class DomainDetailsActivity extends SyncServiceEnabledActivity
             // Respond to the action bar's Up/Home button
             case android.R.id.home:
                 Intent upIntent = NavUtils.getParentActivityIntent(this);
-                upIntent.putExtra(UnlockActivity.KEYIVKEY, kgkManager.exportKeyIv());
                 NavUtils.navigateUpTo(this, upIntent);
                 return true;
         }
@@ -18,13 +18,7 @@ import android.widget.Switch;
 import android.widget.TextView;
 
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Locale;
-import java.util.Random;
 
 
 /**
@@ -36,12 +30,13 @@ import java.util.Random;
 public class DomainDetailsFragment extends Fragment
         implements SmartSelector.OnStrengthSelectedEventListener,
         GeneratePasswordTask.OnPasswordGeneratedListener {
-    public static final String KEYIVKEY = "de.pinyto.ctsesam.KEYIV";
     private KgkManager kgkManager;
     private PasswordSettingsManager settingsManager;
     private PasswordSetting setting;
     private boolean isNewSetting;
     private PasswordGenerator passwordGenerator;
+    private StrengthPreview strengthPreview;
+    private PasswordDerivationScheduler derivationScheduler;
     private OnPasswordGeneratedListener passwordGeneratedListener;
     private TextView domainView;
     private EditText editTextPassword;
@@ -78,38 +73,38 @@ public class DomainDetailsFragment extends Fragment
         textViewLength = fLayout.findViewById(R.id.textViewLength);
         saveButton = fLayout.findViewById(R.id.saveButton);
         dismissChangesButton = fLayout.findViewById(R.id.dismissChangesButton);
-        // Restore managers if needed
-        if (savedInstanceState != null) {
-            kgkManager = new KgkManager(getActivity(),
-                    savedInstanceState.getByteArray(KEYIVKEY));
-            settingsManager = new PasswordSettingsManager(getActivity());
-            this.setSettingsManagerAndKgkManager(settingsManager, kgkManager);
-        }
+        derivationScheduler = new PasswordDerivationScheduler(this);
         return fLayout;
     }
 
     @Override
     public void onResume() {
         super.onResume();
+        if (UnlockedSession.isLocked(settingsManager)) {
+            return;
+        }
         updateView();
         generatePassword();
     }
 
     @Override
     public void onPause() {
+        derivationScheduler.cancel();
         Clearer.zero(editTextPassword.getText());
         editTextPassword.setText("");
         passwordGenerator = null;
+        clearStrengthPreview();
+        settingsManager.writeLocalSettings();
         super.onPause();
     }
 
-    @Override
-    public void onSaveInstanceState(Bundle savedInstanceState) {
-        savedInstanceState.putByteArray(KEYIVKEY, kgkManager.exportKeyIv());
-    }
-
     @Override
     public void onStop() {
+        if (UnlockedSession.isLocked(settingsManager)) {
+            // The setting was cleared with the session.
+            super.onStop();
+            return;
+        }
         if (isNewSetting) {
             applyChanges();
         } else {
@@ -131,35 +126,40 @@ public class DomainDetailsFragment extends Fragment
 
     @Override
     public void onStrengthSelected(int length, int complexity) {
-        StringBuilder template = new StringBuilder();
-        if (complexity % 3 == 0 || complexity >= 5) {
-            template.append("n");
-        }
-        if (complexity == 1 || complexity >= 3) {
-            template.append("a");
-        }
-        if (complexity == 2 || complexity >= 4) {
-            template.append("A");
-        }
-        if (complexity >= 6) {
-            template.append("o");
-        }
-        while (template.length() < length) {
-            template.append("x");
+        if (passwordGenerator != null && !setting.hasLegacyPassword() &&
+                StrengthPreview.contains(length, complexity)) {
+            if (strengthPreview == null ||
+                    !strengthPreview.isValidFor(passwordGenerator, setting)) {
+                clearStrengthPreview();
+                strengthPreview = new StrengthPreview(passwordGenerator, setting);
+            }
+            setting.setTemplate(strengthPreview.getTemplate(length, complexity));
+            updateView();
+            editTextPassword.setText(strengthPreview.getPassword(length, complexity));
+            if (passwordGeneratedListener != null)
+                passwordGeneratedListener.onPasswordGenerated();
+        } else {
+            setting.setTemplate(StrengthPreview.createTemplate(length, complexity,
+                    setting.getSalt()));
+            updateView();
+            generatePassword();
         }
-        String shuffledTemplate = shuffleString(template.toString(), setting.getSalt());
-        setting.setTemplate(shuffledTemplate);
-        passwordGenerator = null;
-        updateView();
-        generatePassword();
     }
 
     @Override
     public void onPasswordGenerationFinished(PasswordGenerator generator) {
         passwordGenerator = generator;
+        clearStrengthPreview();
         generatePassword();
     }
 
+    private void clearStrengthPreview() {
+        if (strengthPreview != null) {
+            strengthPreview.clear();
+            strengthPreview = null;
+        }
+    }
+
     /**
      * This interface must be implemented by activities that contain this
      * fragment to allow an interaction in this fragment to be communicated
@@ -175,10 +175,19 @@ public class DomainDetailsFragment extends Fragment
     }
 
     public void generatePassword() {
+        generatePassword(false);
+    }
+
+    /**
+     * Shows the password. If there is no PasswordGenerator for the current setting the hashing
+     * is scheduled and the password is shown when it is finished.
+     *
+     * @param debounce true if the call was caused by typing
+     */
+    private void generatePassword(boolean debounce) {
         if (this.kgkManager.hasKgk()) {
             if (!setting.hasLegacyPassword()) {
                 if (this.passwordGenerator == null) {
-                    GeneratePasswordTask generatePasswordTask = new GeneratePasswordTask(this);
                     if (setting.getIterations() <= 0) {
                         Log.e("Password Setting Error",
                                 "Iterations too small: " +
@@ -186,13 +195,7 @@ public class DomainDetailsFragment extends Fragment
                                         ". Setting to 4096.");
                         setting.setIterations(4096);
                     }
-                    generatePasswordTask.execute(
-                            UTF8.encode(setting.getDomain()),
-                            UTF8.encode(setting.getUsername()),
-                            kgkManager.getKgk(),
-                            setting.getSalt(),
-                            ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN)
-                                    .putInt(setting.getIterations()).array());
+                    derivationScheduler.request(setting, kgkManager, debounce);
                 } else {
                     editTextPassword.setText(this.passwordGenerator.getPassword(setting));
                     if (passwordGeneratedListener != null)
@@ -233,22 +236,6 @@ public class DomainDetailsFragment extends Fragment
         textViewLength.setText(String.format(Locale.GERMANY, "%d", setting.getLength()));
     }
 
-    private static String shuffleString(String string, byte[] salt)
-    {
-        List<String> letters = Arrays.asList(string.split(""));
-        long seed = 0;
-        for (int i=0; i < 48/8; i++) {
-            seed += (long) salt[i] << i*8;
-        }
-        Random rng = new Random(seed);
-        Collections.shuffle(letters, rng);
-        StringBuilder shuffled = new StringBuilder();
-        for (String letter : letters) {
-            shuffled.append(letter);
-        }
-        return shuffled.toString();
-    }
-
     public void clearPassword() {
         if (editTextPassword != null) {
             Clearer.zero(editTextPassword.getText());
@@ -290,7 +277,7 @@ public class DomainDetailsFragment extends Fragment
                 try {
                     setting.setIterations(Integer.parseInt(charSequence.toString()));
                     passwordGenerator = null;
-                    generatePassword();
+                    generatePassword(true);
                 } catch (NumberFormatException e) {
                     Log.e("#iterations not an int", e.toString());
                 }
@@ -311,7 +298,7 @@ public class DomainDetailsFragment extends Fragment
             public void onTextChanged(CharSequence charSequence, int i, int i1, int i2) {
                 setting.setUsername(charSequence.toString());
                 passwordGenerator = null;
-                generatePassword();
+                generatePassword(true);
             }
 
             @Override
@@ -367,13 +354,13 @@ public class DomainDetailsFragment extends Fragment
         } catch (CloneNotSupportedException e) {
             Log.e("Unable to clone setting", e.toString());
         }
-        settingsManager.storeLocalSettings(kgkManager);
+        settingsManager.requestStoreLocalSettings(kgkManager);
     }
 
     private void dismissChanges(boolean doGeneratePassword) {
         if (isNewSetting) {
             settingsManager.deleteSetting(setting.getDomain());
-            settingsManager.storeLocalSettings(kgkManager);
+            settingsManager.requestStoreLocalSettings(kgkManager);
             getActivity().finish();
         } else {
             try {
@@ -7,15 +7,18 @@ import java.util.regex.Pattern;
  * This class is used to extract domains from urls.
  */
 public class DomainExtractor {
+    private static final Pattern coPattern =
+            Pattern.compile("(?:https?://)?(\\w+\\.)+(co\\.\\w+).*");
+    private static final Pattern domainPattern =
+            Pattern.compile("(?:https?://)?(\\w+\\.)+(\\w+).*");
+
     public static String extract(String url) {
-        Pattern pattern = Pattern.compile("(?:https?://)?(\\w+\\.)+(co\\.\\w+).*");
-        Matcher matcher = pattern.matcher(url);
+        Matcher matcher = coPattern.matcher(url);
         if (matcher.matches() && matcher.groupCount() >= 2) {
             return matcher.group(matcher.groupCount() - 1) +
                     matcher.group(matcher.groupCount());
         }
-        pattern = Pattern.compile("(?:https?://)?(\\w+\\.)+(\\w+).*");
-        matcher = pattern.matcher(url);
+        matcher = domainPattern.matcher(url);
         if (matcher.matches() && matcher.groupCount() >= 2) {
             return matcher.group(matcher.groupCount() - 1) +
                     matcher.group(matcher.groupCount());
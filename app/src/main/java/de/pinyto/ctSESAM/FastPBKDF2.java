@@ -0,0 +1,448 @@
+package de.pinyto.ctSESAM;
+
+/**
+ * PBKDF2 with HMAC-SHA256, HMAC-SHA384 and HMAC-SHA512 implemented directly on the state words
+ * of the hash functions. The compression of the ipad and opad blocks of HMAC only depends on
+ * the password. So it is done once per derivation and every iteration starts from these
+ * midstates. An iteration costs exactly two calls of the compression function and does not
+ * allocate. The results are the same as with {@link PBKDF2#hmac}.
+ */
+public class FastPBKDF2 {
+    private static final int CANCELLATION_CHECK_INTERVAL = 256;
+    private static final long[] K512 = {
+            0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL,
+            0xe9b5dba58189dbbcL, 0x3956c25bf348b538L, 0x59f111f1b605d019L,
+            0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L, 0xd807aa98a3030242L,
+            0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L,
+            0x72be5d74f27b896fL, 0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L,
+            0xc19bf174cf692694L, 0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L,
+            0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L, 0x2de92c6f592b0275L,
+            0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L, 0x76f988da831153b5L,
+            0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL,
+            0xbf597fc7beef0ee4L, 0xc6e00bf33da88fc2L, 0xd5a79147930aa725L,
+            0x06ca6351e003826fL, 0x142929670a0e6e70L, 0x27b70a8546d22ffcL,
+            0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL,
+            0x650a73548baf63deL, 0x766a0abb3c77b2a8L, 0x81c2c92e47edaee6L,
+            0x92722c851482353bL, 0xa2bfe8a14cf10364L, 0xa81a664bbc423001L,
+            0xc24b8b70d0f89791L, 0xc76c51a30654be30L, 0xd192e819d6ef5218L,
+            0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+            0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L,
+            0x34b0bcb5e19b48a8L, 0x391c0cb3c5c95a63L, 0x4ed8aa4ae3418acbL,
+            0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L, 0x748f82ee5defb2fcL,
+            0x78a5636f43172f60L, 0x84c87814a1f0ab72L, 0x8cc702081a6439ecL,
+            0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L,
+            0xc67178f2e372532bL, 0xca273eceea26619cL, 0xd186b8c721c0c207L,
+            0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L, 0x06f067aa72176fbaL,
+            0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL,
+            0x28db77f523047d84L, 0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL,
+            0x431d67c49c100d4cL, 0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL,
+            0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L
+    };
+    private static final long[] IV512 = {
+            0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL,
+            0xa54ff53a5f1d36f1L, 0x510e527fade682d1L, 0x9b05688c2b3e6c1fL,
+            0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L
+    };
+    private static final long[] IV384 = {
+            0xcbbb9d5dc1059ed8L, 0x629a292a367cd507L, 0x9159015a3070dd17L,
+            0x152fecd8f70e5939L, 0x67332667ffc00b31L, 0x8eb44a8768581511L,
+            0xdb0c2e0d64f98fa7L, 0x47b5481dbefa4fa4L
+    };
+    private static final int[] K256 = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1,
+            0x923f82a4, 0xab1c5ed5, 0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3,
+            0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174, 0xe49b69c1, 0xefbe4786,
+            0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147,
+            0x06ca6351, 0x14292967, 0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13,
+            0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b,
+            0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a,
+            0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+            0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+    private static final int[] IV256 = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c,
+            0x1f83d9ab, 0x5be0cd19
+    };
+
+    /**
+     * Pass "SHA256" or "SHA384" or "SHA512" as the parameter hashFunction.
+     *
+     * @param hashFunction
+     * @param hashString
+     * @param salt
+     * @param iterations
+     * @return
+     */
+    public static byte[] hmac(String hashFunction, byte[] hashString, byte[] salt, int iterations) {
+        return hmac(hashFunction, hashString, salt, iterations, null);
+    }
+
+    /**
+     * Like {@link #hmac(String, byte[], byte[], int)} but checks the signal every
+     * CANCELLATION_CHECK_INTERVAL iterations. Returns null if the derivation was cancelled.
+     */
+    public static byte[] hmac(String hashFunction, byte[] hashString, byte[] salt, int iterations,
+                              CancellationSignal signal) {
+        switch (hashFunction) {
+            case "SHA256":
+                return pbkdf2Sha256(hashString, salt, iterations, signal);
+            case "SHA384":
+                return pbkdf2Sha512(IV384, 6, hashString, salt, iterations, signal);
+            default:
+                return pbkdf2Sha512(IV512, 8, hashString, salt, iterations, signal);
+        }
+    }
+
+    /**
+     * Lets a long running derivation stop early. The method has the same signature as
+     * AsyncTask.isCancelled so tasks can pass themselves.
+     */
+    public interface CancellationSignal {
+        boolean isCancelled();
+    }
+
+    private static boolean isCancelled(CancellationSignal signal, int iteration) {
+        return signal != null && iteration % CANCELLATION_CHECK_INTERVAL == 0 &&
+                signal.isCancelled();
+    }
+
+    private static byte[] pbkdf2Sha512(long[] iv, int hWords, byte[] password, byte[] salt,
+                                       int iterations, CancellationSignal signal) {
+        long[] w = new long[80];
+        long[] block = new long[16];
+        long[] state = new long[8];
+        byte[] key = password;
+        if (key.length > 128) {
+            hashSha512(iv, 0, key, 0, key.length, state, w);
+            key = new byte[hWords * 8];
+            storeLongs(state, hWords, key);
+        }
+        // HMAC midstates after the first block of the inner and the outer hash
+        long[] inner = new long[8];
+        long[] outer = new long[8];
+        padKey512(key, 0x3636363636363636L, block);
+        System.arraycopy(iv, 0, inner, 0, 8);
+        compress512(inner, block, w);
+        padKey512(key, 0x5c5c5c5c5c5c5c5cL, block);
+        System.arraycopy(iv, 0, outer, 0, 8);
+        compress512(outer, block, w);
+        if (key != password) {
+            Clearer.zero(key);
+        }
+        // U_1 = PRF(password, salt || INT(1))
+        byte[] message = new byte[salt.length + 4];
+        System.arraycopy(salt, 0, message, 0, salt.length);
+        message[salt.length + 3] = 1;
+        hashSha512(inner, 128, message, 0, message.length, state, w);
+        // Inner and outer messages are both one digest behind a full block, so the padding
+        // and the length are the same for every block which is compressed from here on.
+        for (int j = hWords; j < 16; j++) {
+            block[j] = 0;
+        }
+        block[hWords] = 0x8000000000000000L;
+        block[15] = (128 + hWords * 8) * 8;
+        System.arraycopy(state, 0, block, 0, hWords);
+        System.arraycopy(outer, 0, state, 0, 8);
+        compress512(state, block, w);
+        long[] t = new long[hWords];
+        System.arraycopy(state, 0, t, 0, hWords);
+        boolean cancelled = false;
+        for (int c = 1; c < iterations; c++) {
+            if (isCancelled(signal, c)) {
+                cancelled = true;
+                break;
+            }
+            System.arraycopy(state, 0, block, 0, hWords);
+            System.arraycopy(inner, 0, state, 0, 8);
+            compress512(state, block, w);
+            System.arraycopy(state, 0, block, 0, hWords);
+            System.arraycopy(outer, 0, state, 0, 8);
+            compress512(state, block, w);
+            for (int j = 0; j < hWords; j++) {
+                t[j] ^= state[j];
+            }
+        }
+        byte[] dk = null;
+        if (!cancelled) {
+            dk = new byte[hWords * 8];
+            storeLongs(t, hWords, dk);
+        }
+        Clearer.zero(w);
+        Clearer.zero(block);
+        Clearer.zero(state);
+        Clearer.zero(inner);
+        Clearer.zero(outer);
+        Clearer.zero(t);
+        return dk;
+    }
+
+    private static byte[] pbkdf2Sha256(byte[] password, byte[] salt, int iterations,
+                                       CancellationSignal signal) {
+        int[] w = new int[64];
+        int[] block = new int[16];
+        int[] state = new int[8];
+        byte[] key = password;
+        if (key.length > 64) {
+            hashSha256(IV256, 0, key, 0, key.length, state, w);
+            key = new byte[32];
+            storeInts(state, 8, key);
+        }
+        int[] inner = new int[8];
+        int[] outer = new int[8];
+        padKey256(key, 0x36363636, block);
+        System.arraycopy(IV256, 0, inner, 0, 8);
+        compress256(inner, block, w);
+        padKey256(key, 0x5c5c5c5c, block);
+        System.arraycopy(IV256, 0, outer, 0, 8);
+        compress256(outer, block, w);
+        if (key != password) {
+            Clearer.zero(key);
+        }
+        byte[] message = new byte[salt.length + 4];
+        System.arraycopy(salt, 0, message, 0, salt.length);
+        message[salt.length + 3] = 1;
+        hashSha256(inner, 64, message, 0, message.length, state, w);
+        for (int j = 8; j < 16; j++) {
+            block[j] = 0;
+        }
+        block[8] = 0x80000000;
+        block[15] = (64 + 32) * 8;
+        System.arraycopy(state, 0, block, 0, 8);
+        System.arraycopy(outer, 0, state, 0, 8);
+        compress256(state, block, w);
+        int[] t = new int[8];
+        System.arraycopy(state, 0, t, 0, 8);
+        boolean cancelled = false;
+        for (int c = 1; c < iterations; c++) {
+            if (isCancelled(signal, c)) {
+                cancelled = true;
+                break;
+            }
+            System.arraycopy(state, 0, block, 0, 8);
+            System.arraycopy(inner, 0, state, 0, 8);
+            compress256(state, block, w);
+            System.arraycopy(state, 0, block, 0, 8);
+            System.arraycopy(outer, 0, state, 0, 8);
+            compress256(state, block, w);
+            for (int j = 0; j < 8; j++) {
+                t[j] ^= state[j];
+            }
+        }
+        byte[] dk = null;
+        if (!cancelled) {
+            dk = new byte[32];
+            storeInts(t, 8, dk);
+        }
+        Clearer.zero(w);
+        Clearer.zero(block);
+        Clearer.zero(state);
+        Clearer.zero(inner);
+        Clearer.zero(outer);
+        Clearer.zero(t);
+        return dk;
+    }
+
+    private static void padKey512(byte[] key, long pad, long[] block) {
+        for (int j = 0; j < 16; j++) {
+            long word = 0;
+            for (int b = 0; b < 8; b++) {
+                int k = j * 8 + b;
+                word = (word << 8) | (k < key.length ? key[k] & 0xff : 0);
+            }
+            block[j] = word ^ pad;
+        }
+    }
+
+    private static void padKey256(byte[] key, int pad, int[] block) {
+        for (int j = 0; j < 16; j++) {
+            int word = 0;
+            for (int b = 0; b < 4; b++) {
+                int k = j * 4 + b;
+                word = (word << 8) | (k < key.length ? key[k] & 0xff : 0);
+            }
+            block[j] = word ^ pad;
+        }
+    }
+
+    /**
+     * Hashes the message starting from the given state. prefixLength is the number of bytes
+     * which were already compressed into the start state. The final state is written to out.
+     */
+    private static void hashSha512(long[] start, long prefixLength, byte[] message, int offset,
+                                   int length, long[] out, long[] w) {
+        System.arraycopy(start, 0, out, 0, 8);
+        long[] block = new long[16];
+        byte[] tail = new byte[256];
+        int full = length - length % 128;
+        for (int i = 0; i < full; i += 128) {
+            loadLongs(message, offset + i, block);
+            compress512(out, block, w);
+        }
+        int rest = length - full;
+        System.arraycopy(message, offset + full, tail, 0, rest);
+        tail[rest] = (byte) 0x80;
+        int tailLength = rest + 17 <= 128 ? 128 : 256;
+        long bits = (prefixLength + length) * 8;
+        for (int b = 0; b < 8; b++) {
+            tail[tailLength - 1 - b] = (byte) (bits >>> (8 * b));
+        }
+        for (int i = 0; i < tailLength; i += 128) {
+            loadLongs(tail, i, block);
+            compress512(out, block, w);
+        }
+        Clearer.zero(tail);
+        Clearer.zero(block);
+    }
+
+    private static void hashSha256(int[] start, long prefixLength, byte[] message, int offset,
+                                   int length, int[] out, int[] w) {
+        System.arraycopy(start, 0, out, 0, 8);
+        int[] block = new int[16];
+        byte[] tail = new byte[128];
+        int full = length - length % 64;
+        for (int i = 0; i < full; i += 64) {
+            loadInts(message, offset + i, block);
+            compress256(out, block, w);
+        }
+        int rest = length - full;
+        System.arraycopy(message, offset + full, tail, 0, rest);
+        tail[rest] = (byte) 0x80;
+        int tailLength = rest + 9 <= 64 ? 64 : 128;
+        long bits = (prefixLength + length) * 8;
+        for (int b = 0; b < 8; b++) {
+            tail[tailLength - 1 - b] = (byte) (bits >>> (8 * b));
+        }
+        for (int i = 0; i < tailLength; i += 64) {
+            loadInts(tail, i, block);
+            compress256(out, block, w);
+        }
+        Clearer.zero(tail);
+        Clearer.zero(block);
+    }
+
+    private static void compress512(long[] state, long[] block, long[] w) {
+        System.arraycopy(block, 0, w, 0, 16);
+        for (int i = 16; i < 80; i++) {
+            long x = w[i - 15];
+            long y = w[i - 2];
+            long s0 = Long.rotateRight(x, 1) ^ Long.rotateRight(x, 8) ^ (x >>> 7);
+            long s1 = Long.rotateRight(y, 19) ^ Long.rotateRight(y, 61) ^ (y >>> 6);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+        long a = state[0];
+        long b = state[1];
+        long c = state[2];
+        long d = state[3];
+        long e = state[4];
+        long f = state[5];
+        long g = state[6];
+        long h = state[7];
+        for (int i = 0; i < 80; i++) {
+            long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+            long ch = (e & f) ^ (~e & g);
+            long t1 = h + s1 + ch + K512[i] + w[i];
+            long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+            long maj = (a & b) ^ (a & c) ^ (b & c);
+            long t2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+
+    private static void compress256(int[] state, int[] block, int[] w) {
+        System.arraycopy(block, 0, w, 0, 16);
+        for (int i = 16; i < 64; i++) {
+            int x = w[i - 15];
+            int y = w[i - 2];
+            int s0 = Integer.rotateRight(x, 7) ^ Integer.rotateRight(x, 18) ^ (x >>> 3);
+            int s1 = Integer.rotateRight(y, 17) ^ Integer.rotateRight(y, 19) ^ (y >>> 10);
+            w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+        }
+        int a = state[0];
+        int b = state[1];
+        int c = state[2];
+        int d = state[3];
+        int e = state[4];
+        int f = state[5];
+        int g = state[6];
+        int h = state[7];
+        for (int i = 0; i < 64; i++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^
+                    Integer.rotateRight(e, 25);
+            int ch = (e & f) ^ (~e & g);
+            int t1 = h + s1 + ch + K256[i] + w[i];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^
+                    Integer.rotateRight(a, 22);
+            int maj = (a & b) ^ (a & c) ^ (b & c);
+            int t2 = s0 + maj;
+            h = g;
+            g = f;
+            f = e;
+            e = d + t1;
+            d = c;
+            c = b;
+            b = a;
+            a = t1 + t2;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
+        state[5] += f;
+        state[6] += g;
+        state[7] += h;
+    }
+
+    private static void loadLongs(byte[] src, int offset, long[] dst) {
+        for (int j = 0; j < 16; j++) {
+            long word = 0;
+            for (int b = 0; b < 8; b++) {
+                word = (word << 8) | (src[offset + j * 8 + b] & 0xff);
+            }
+            dst[j] = word;
+        }
+    }
+
+    private static void loadInts(byte[] src, int offset, int[] dst) {
+        for (int j = 0; j < 16; j++) {
+            int word = 0;
+            for (int b = 0; b < 4; b++) {
+                word = (word << 8) | (src[offset + j * 4 + b] & 0xff);
+            }
+            dst[j] = word;
+        }
+    }
+
+    private static void storeLongs(long[] src, int words, byte[] dst) {
+        for (int j = 0; j < words; j++) {
+            for (int b = 0; b < 8; b++) {
+                dst[j * 8 + b] = (byte) (src[j] >>> (56 - 8 * b));
+            }
+        }
+    }
+
+    private static void storeInts(int[] src, int words, byte[] dst) {
+        for (int j = 0; j < words; j++) {
+            for (int b = 0; b < 4; b++) {
+                dst[j * 4 + b] = (byte) (src[j] >>> (24 - 8 * b));
+            }
+        }
+    }
+}
@@ -9,9 +9,10 @@ import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
- * Calculate a password and display it.
+ * Calculate a password and display it. The hashing stops early if the task gets cancelled.
  */
-class GeneratePasswordTask extends AsyncTask<byte[], Void, PasswordGenerator> {
+class GeneratePasswordTask extends AsyncTask<byte[], Void, PasswordGenerator>
+        implements FastPBKDF2.CancellationSignal {
     private WeakReference<OnPasswordGeneratedListener> passwordGeneratedListenerWeakRef;
 
     GeneratePasswordTask(OnPasswordGeneratedListener passwordGeneratedListener) {
@@ -33,9 +34,12 @@ class GeneratePasswordTask extends AsyncTask<byte[], Void, PasswordGenerator> {
                     username,
                     kgk,
                     salt,
-                    iterations);
+                    iterations,
+                    this);
         } catch (NotHashedException e) {
-            e.printStackTrace();
+            if (!isCancelled()) {
+                e.printStackTrace();
+            }
             return null;
         }
     }
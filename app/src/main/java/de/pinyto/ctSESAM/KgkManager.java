@@ -14,10 +14,13 @@ import javax.crypto.NoSuchPaddingException;
  * Stores and manages the key-generation-key.
  */
 public class KgkManager {
+    private static int lastKgkGeneration = 0;
+    private int kgkGeneration = 0;
     private SharedPreferences savedDomains;
     private byte[] kgk;
     private byte[] iv2;
     private byte[] salt2;
+    private byte[] settingsKey;
     private Crypter kgkCrypter;
     private byte[] salt;
 
@@ -61,7 +64,35 @@ public class KgkManager {
         return this.kgkCrypter;
     }
 
+    /**
+     * Every KGK which is created or decrypted gets a generation number which no other KGK in
+     * the process has. Everything which was derived from a KGK can be tied to its generation
+     * and is invalid as soon as the manager holds another generation. A manager without a
+     * KGK has the generation 0.
+     */
+    public int getKgkGeneration() {
+        return this.kgkGeneration;
+    }
+
+    private static synchronized int createKgkGeneration() {
+        lastKgkGeneration++;
+        return lastKgkGeneration;
+    }
+
+    /**
+     * Drops the hashes which were derived from the current KGK and starts the given
+     * generation. Managers without a KGK leave the cache alone.
+     */
+    private void replaceKgkGeneration(int kgkGeneration) {
+        if (this.kgkGeneration != 0) {
+            DerivedHashCache.getInstance().clear(this.kgkGeneration);
+        }
+        this.kgkGeneration = kgkGeneration;
+    }
+
     public byte[] createNewKgk() {
+        this.replaceKgkGeneration(createKgkGeneration());
+        this.clearSettingsKey();
         Clearer.zero(this.salt2);
         Clearer.zero(this.iv2);
         Clearer.zero(this.kgk);
@@ -88,6 +119,8 @@ public class KgkManager {
         } else {
             try {
                 byte[] kgkBlock = kgkCrypter.decrypt(encryptedKgk, "NoPadding");
+                this.replaceKgkGeneration(createKgkGeneration());
+                this.clearSettingsKey();
                 Clearer.zero(this.salt2);
                 Clearer.zero(this.iv2);
                 Clearer.zero(this.kgk);
@@ -122,7 +155,25 @@ public class KgkManager {
         return this.iv2;
     }
 
+    /**
+     * Returns the key for the settings which is derived from the KGK and salt2. The key is
+     * derived once and cached until salt2 or the KGK change or the manager is reset. The
+     * returned array is a copy which the caller may zero.
+     */
+    public byte[] getSettingsKey() {
+        if (this.settingsKey == null) {
+            this.settingsKey = Crypter.createKey(this.kgk, this.salt2);
+        }
+        return this.settingsKey.clone();
+    }
+
+    private void clearSettingsKey() {
+        Clearer.zero(this.settingsKey);
+        this.settingsKey = null;
+    }
+
     public void freshSalt2() {
+        this.clearSettingsKey();
         Clearer.zero(this.salt2);
         this.salt2 = Crypter.createSalt();
     }
@@ -171,7 +222,9 @@ public class KgkManager {
     }
 
     public void reset() {
+        this.replaceKgkGeneration(0);
         if (this.kgkCrypter != null) this.kgkCrypter.clear();
+        this.clearSettingsKey();
         Clearer.zero(this.salt);
         Clearer.zero(this.iv2);
         Clearer.zero(this.salt2);
@@ -1,16 +1,26 @@
 package de.pinyto.ctSESAM;
 
 import android.os.AsyncTask;
+import android.util.Log;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 /**
- * Asynchronously load and decrypt local settings.
+ * Asynchronously load and decrypt local settings. Deriving the key, decrypting the KGK and
+ * reading the settings run in the background. While the key is derived another thread reads
+ * the KGK block and the stored settings and loads the security providers, so afterwards only
+ * the decryption is left. The main thread only adds the decoded settings to the settings
+ * manager. The durations of the stages are logged.
  */
-public class LoadLocalSettingsTask extends AsyncTask<byte[], Void, byte[]> {
+public class LoadLocalSettingsTask
+        extends AsyncTask<byte[], Void, PasswordSettingsManager.LoadedSettings> {
     private KgkManager kgkManager;
     private PasswordSettingsManager settingsManager;
     private WeakReference<OnKgkDecryptionFinishedListener> finishedListenerWeakRef;
+    private final StageTimer timer = new StageTimer();
 
     LoadLocalSettingsTask(OnKgkDecryptionFinishedListener finishedListener,
                           KgkManager kgkManager,
@@ -22,31 +32,86 @@ public class LoadLocalSettingsTask extends AsyncTask<byte[], Void, byte[]> {
     }
 
     @Override
-    protected byte[] doInBackground(byte[]... params) {
+    protected PasswordSettingsManager.LoadedSettings doInBackground(byte[]... params) {
         byte[] password = params[0];
         byte[] salt = params[1];
+        FutureTask<Prefetch> prefetchTask = new FutureTask<>(new Callable<Prefetch>() {
+            @Override
+            public Prefetch call() {
+                return new Prefetch(kgkManager, settingsManager);
+            }
+        });
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(prefetchTask);
+        timer.start("createIvKey");
         byte[] ivKey = Crypter.createIvKey(password, salt);
         for (int i = 0; i < password.length; i++) {
             password[i] = 0x00;
         }
-        return ivKey;
+        timer.start("waitForPrefetch");
+        Prefetch prefetch = this.getPrefetch(prefetchTask);
+        timer.start("decryptKgk");
+        kgkManager.decryptKgk(new Crypter(ivKey), prefetch.encryptedKgkBlock);
+        timer.start("deriveSettingsKey");
+        Clearer.zero(kgkManager.getSettingsKey());
+        timer.start("loadSettings");
+        try {
+            return settingsManager.decodeLocalSettings(kgkManager, prefetch.settings);
+        } catch (WrongPasswordException passwordError) {
+            return null;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Waits for the prefetch. If it failed the data is read on this thread.
+     */
+    private Prefetch getPrefetch(FutureTask<Prefetch> prefetchTask) {
+        try {
+            Prefetch prefetch = prefetchTask.get();
+            Log.d("Unlock timings", "prefetch in parallel: " + prefetch.duration + " ms");
+            return prefetch;
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return new Prefetch(kgkManager, settingsManager);
     }
 
     @Override
-    protected void onPostExecute(byte[] ivKey) {
-        byte[] encryptedKgkBlock = kgkManager.getLocalKgkBlock();
-        kgkManager.decryptKgk(new Crypter(ivKey), encryptedKgkBlock);
+    protected void onPostExecute(PasswordSettingsManager.LoadedSettings loadedSettings) {
         OnKgkDecryptionFinishedListener finishedListener = finishedListenerWeakRef.get();
-        try {
-            settingsManager.loadLocalSettings(kgkManager);
-            if (finishedListener != null) {
-                finishedListener.onFinished(true);
-            }
-        } catch (WrongPasswordException passwordError) {
+        if (loadedSettings == null) {
             kgkManager.reset();
             if (finishedListener != null) {
                 finishedListener.onFinished(false);
             }
+            return;
+        }
+        timer.start("applySettings");
+        settingsManager.applyLocalSettings(kgkManager, loadedSettings);
+        timer.stop();
+        Log.d("Unlock timings", loadedSettings.size() + " settings, " + timer);
+        if (finishedListener != null) {
+            finishedListener.onFinished(true);
+        }
+    }
+
+    /**
+     * Everything which is read before the key is known.
+     */
+    private static class Prefetch {
+        private final byte[] encryptedKgkBlock;
+        private final PasswordSettingsManager.PrefetchedSettings settings;
+        private final long duration;
+
+        Prefetch(KgkManager kgkManager, PasswordSettingsManager settingsManager) {
+            long start = System.nanoTime();
+            this.encryptedKgkBlock = kgkManager.getLocalKgkBlock();
+            this.settings = settingsManager.prefetchLocalSettings();
+            Crypter.loadProviders();
+            this.duration = (System.nanoTime() - start) / 1000000;
         }
     }
 
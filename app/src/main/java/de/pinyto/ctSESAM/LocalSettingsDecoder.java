@@ -0,0 +1,61 @@
+package de.pinyto.ctSESAM;
+
+import android.util.JsonReader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes the locally stored settings structure {"settings": {...}, "synced": [...]} with a
+ * pull parser. Every setting is read directly into a PasswordSetting so neither the whole JSON
+ * String nor a JSONObject tree is created.
+ */
+class LocalSettingsDecoder {
+    private final Map<String, PasswordSetting> settings = new LinkedHashMap<>();
+    private final Set<String> syncedDomains = new HashSet<>();
+
+    /**
+     * Reads the structure from the reader. Settings which were read before an error are kept.
+     */
+    void decode(Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("settings")) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    PasswordSetting setting = new PasswordSetting(key);
+                    setting.loadFromJSON(reader);
+                    this.settings.put(key, setting);
+                }
+                reader.endObject();
+            } else if (name.equals("synced")) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    this.syncedDomains.add(reader.nextString());
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Returns the decoded settings by the key under which they were stored.
+     */
+    Map<String, PasswordSetting> getSettings() {
+        return this.settings;
+    }
+
+    Set<String> getSyncedDomains() {
+        return this.syncedDomains;
+    }
+}
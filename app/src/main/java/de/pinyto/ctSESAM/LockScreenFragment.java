@@ -144,6 +144,18 @@ public class LockScreenFragment extends Fragment {
         }
     }
 
+    /**
+     * Hands the unlocked managers over to a new session. This fragment continues with new
+     * managers so resetting them does not lock the session.
+     */
+    private void openSession() {
+        UnlockedSession.open(kgkManager, settingsManager);
+        KgkManager unlockedKgkManager = kgkManager;
+        kgkManager = new KgkManager(getActivity().getBaseContext());
+        settingsManager = new PasswordSettingsManager(getActivity().getBaseContext());
+        unlockSuccessfulListener.onUnlock(unlockedKgkManager);
+    }
+
     private void tryToUnlockKgk() {
         byte[] password = UTF8.encode(editTextMasterPassword.getText());
         if (kgkManager.getLocalKgkBlock().length == 112) {
@@ -155,7 +167,7 @@ public class LockScreenFragment extends Fragment {
                 public void onFinished(boolean success) {
                     if (success) {
                         textViewDecryptionMessage.setText("");
-                        unlockSuccessfulListener.onUnlock(kgkManager);
+                        openSession();
                     } else {
                         setMessageTextStyle(true);
                         textViewDecryptionMessage.setText(R.string.local_wrong_password);
@@ -182,7 +194,7 @@ public class LockScreenFragment extends Fragment {
                         textViewDecryptionMessage.setText(
                                 getString(R.string.KgkCreationFinished));
                         settingsManager.storeLocalSettings(kgkManager);
-                        unlockSuccessfulListener.onUnlock(kgkManager);
+                        openSession();
                     } else {
                         setMessageTextStyle(true);
                         textViewDecryptionMessage.setText(
@@ -1,10 +1,10 @@
 package de.pinyto.ctSESAM;
 
-import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
@@ -12,13 +12,8 @@ import javax.crypto.spec.SecretKeySpec;
  */
 public class PBKDF2 {
     public static byte[] shaHMAC(String hashFunction, byte[] key, byte[] password) {
-        if (key.length == 0) {
-            key = new byte[] { 0x00 };
-        }
         try {
-            Mac sha_HMAC = Mac.getInstance("Hmac" + hashFunction);
-            sha_HMAC.init(new SecretKeySpec(key, "Hmac" + hashFunction));
-            return sha_HMAC.doFinal(password);
+            return createHmac(hashFunction, key).doFinal(password);
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
             return password;
@@ -28,21 +23,45 @@ public class PBKDF2 {
         }
     }
 
-    private static byte[] F (String hashFunction, byte[] password, byte[] salt, int iterations, int i)
+    /**
+     * Creates a Mac which is keyed with the password. The key schedule is done here once so
+     * the Mac can be reused for every iteration of a derivation.
+     *
+     * @param hashFunction "SHA256", "SHA384" or "SHA512"
+     * @param key the HMAC key
+     * @return a keyed Mac
+     */
+    private static Mac createHmac(String hashFunction, byte[] key)
+            throws NoSuchAlgorithmException, InvalidKeyException {
+        if (key.length == 0) {
+            key = new byte[] { 0x00 };
+        }
+        Mac mac = Mac.getInstance("Hmac" + hashFunction);
+        mac.init(new SecretKeySpec(key, "Hmac" + hashFunction));
+        return mac;
+    }
+
+    private static byte[] F (Mac prf, byte[] salt, int iterations, int i)
+            throws ShortBufferException
     {
-        byte[] Si = new byte[salt.length+4];
-        System.arraycopy(salt, 0, Si, 0, salt.length);
-        byte[] iByteArray = ByteBuffer.allocate(4).putInt(i).array();
-        System.arraycopy(iByteArray, 0, Si, salt.length, iByteArray.length);
-        byte[] U = shaHMAC(hashFunction, password, Si);
+        prf.update(salt);
+        prf.update((byte) (i >>> 24));
+        prf.update((byte) (i >>> 16));
+        prf.update((byte) (i >>> 8));
+        prf.update((byte) i);
+        byte[] U = new byte[prf.getMacLength()];
+        prf.doFinal(U, 0);
         byte[] T = new byte[U.length];
         System.arraycopy(U, 0, T, 0, T.length);
         for (int c = 1; c < iterations; c++) {
-            U = shaHMAC(hashFunction, password, U);
+            // The Mac copies its input before writing the output so U can be reused in place.
+            prf.update(U);
+            prf.doFinal(U, 0);
             for (int k = 0; k < U.length; k++) {
                 T[k] = (byte) (((int) T[k]) ^ ((int) U[k]));
             }
         }
+        Clearer.zero(U);
         return T;
     }
 
@@ -54,6 +73,8 @@ public class PBKDF2 {
      * @param salt
      * @param iterations
      * @return
+     * @throws IllegalStateException if the HMAC can not be computed. A key derived without
+     *         the HMAC would be predictable, so there is no fallback.
      */
     public static byte[] hmac (String hashFunction, byte[] hashString, byte[] salt, int iterations)
     {
@@ -71,15 +92,24 @@ public class PBKDF2 {
                            break;
         }
         int l = (int) Math.ceil(dkLen / hLen);
-        int r = dkLen - (l - 1) * hLen;
         byte[] dk = new byte[dkLen];
-        for (int i = 1; i <= l; i++) {
-            byte[] T = F(hashFunction, hashString, salt, iterations, i);
-            for (int k = 0; k < T.length; k++) {
-                if (i-1+k < dk.length) {
-                    dk[i-1+k] = T[k];
+        try {
+            Mac prf = createHmac(hashFunction, hashString);
+            for (int i = 1; i <= l; i++) {
+                byte[] T = F(prf, salt, iterations, i);
+                for (int k = 0; k < T.length; k++) {
+                    if (i-1+k < dk.length) {
+                        dk[i-1+k] = T[k];
+                    }
                 }
+                Clearer.zero(T);
             }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Hmac" + hashFunction + " is not available.", e);
+        } catch (InvalidKeyException e) {
+            throw new IllegalStateException("The password is no valid HMAC key.", e);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException("The HMAC output buffer is too short.", e);
         }
         return dk;
     }
@@ -1,13 +1,19 @@
 package de.pinyto.ctSESAM;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * This class statically packs and unpacks String data.
@@ -80,4 +86,75 @@ public class Packer {
             return new String(decompressedBytes);
         }
     }
+
+    /**
+     * Returns a Reader which inflates the data while it is read. Unlike decompress this
+     * does not create the whole String. The reader has to be closed to free the Inflater.
+     *
+     * @param data compressed data with the length prefix of compress
+     * @return a Reader for the UTF-8 text or null if the data is too big
+     */
+    public static Reader decompressToReader(byte[] data) {
+        if (data.length < 4) {
+            return null;
+        }
+        int length = ByteBuffer.wrap(data, 0, 4).getInt();
+        if (length > 100000) {
+            // This is a sanity check. More than 100kb of password settings make no sense.
+            System.out.println("Decompression error: The trasferred length is too big.");
+            return null;
+        }
+        InflaterInputStream inflaterStream = new InflaterInputStream(
+                new ByteArrayInputStream(data, 4, data.length - 4));
+        try {
+            return new InputStreamReader(inflaterStream, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            System.out.println("Decompression error: UTF-8 is not supported. " +
+                    "Using default encoding.");
+            return new InputStreamReader(inflaterStream);
+        }
+    }
+
+    /**
+     * Returns a stream which compresses everything that is written to it into destination.
+     * The result is the same format as compress. The format starts with the length of the
+     * uncompressed data, so the stream counts the bytes while it compresses them and keeps
+     * only the compressed data until it is closed. Closing the stream writes the length and the
+     * compressed data to destination, zeroes the buffer, frees the Deflater and closes
+     * destination.
+     *
+     * @param destination receives the compressed data
+     * @return the compressing stream
+     */
+    public static OutputStream compressingStream(final OutputStream destination) {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        final SecureByteArrayOutputStream compressed = new SecureByteArrayOutputStream();
+        return new DeflaterOutputStream(compressed, deflater, 8192) {
+            private int length = 0;
+            private boolean closed = false;
+
+            @Override
+            public void write(byte[] buffer, int offset, int count) throws IOException {
+                super.write(buffer, offset, count);
+                this.length += count;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                try {
+                    super.close();
+                    destination.write(ByteBuffer.allocate(4).putInt(this.length).array());
+                    compressed.writeTo(destination);
+                    destination.close();
+                } finally {
+                    deflater.end();
+                    compressed.emptyBuffer();
+                }
+            }
+        };
+    }
 }
@@ -0,0 +1,134 @@
+package de.pinyto.ctSESAM;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Schedules the hashing for the PasswordGenerator of the DomainDetailsFragment. Requests
+ * caused by typing are debounced. A running hashing is cancelled as soon as a request with
+ * other parameters arrives so only the result for the latest request gets delivered.
+ * Hashes from the DerivedHashCache are delivered immediately.
+ * All methods must be called on the main thread.
+ */
+class PasswordDerivationScheduler implements GeneratePasswordTask.OnPasswordGeneratedListener {
+    static final long DEBOUNCE_DELAY_MILLIS = 300;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private WeakReference<GeneratePasswordTask.OnPasswordGeneratedListener>
+            passwordGeneratedListenerWeakRef;
+    private DerivationParameters latestParameters;
+    private KgkManager latestKgkManager;
+    private GeneratePasswordTask runningTask;
+    private boolean startPending = false;
+    private final Runnable startRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startPending = false;
+            startDerivation();
+        }
+    };
+
+    PasswordDerivationScheduler(GeneratePasswordTask.OnPasswordGeneratedListener listener) {
+        this.passwordGeneratedListenerWeakRef = new WeakReference<>(listener);
+    }
+
+    /**
+     * Requests a PasswordGenerator for the setting. Nothing happens if a hashing for the same
+     * parameters is already running.
+     *
+     * @param setting the setting with domain, username, salt and iterations
+     * @param kgkManager the manager which holds the key-generation-key
+     * @param debounce wait for DEBOUNCE_DELAY_MILLIS before starting so following requests can
+     *                 replace this one
+     */
+    public void request(PasswordSetting setting, KgkManager kgkManager, boolean debounce) {
+        DerivationParameters parameters = new DerivationParameters(setting,
+                kgkManager.getKgkGeneration());
+        if (parameters.equals(this.latestParameters)) {
+            if (this.runningTask != null || (this.startPending && debounce)) {
+                return;
+            }
+            if (this.startPending) {
+                // An undebounced request for the same parameters does not wait any longer.
+                this.handler.removeCallbacks(this.startRunnable);
+                this.startPending = false;
+                this.startDerivation();
+                return;
+            }
+        }
+        this.cancel();
+        byte[] cachedHash = DerivedHashCache.getInstance().get(parameters);
+        if (cachedHash != null) {
+            PasswordGenerator generator = new PasswordGenerator(cachedHash);
+            Clearer.zero(cachedHash);
+            this.deliver(generator);
+            return;
+        }
+        this.latestParameters = parameters;
+        this.latestKgkManager = kgkManager;
+        if (debounce) {
+            this.startPending = true;
+            this.handler.postDelayed(this.startRunnable, DEBOUNCE_DELAY_MILLIS);
+        } else {
+            this.startDerivation();
+        }
+    }
+
+    /**
+     * Drops a pending request and cancels the running hashing.
+     */
+    public void cancel() {
+        this.handler.removeCallbacks(this.startRunnable);
+        this.startPending = false;
+        if (this.runningTask != null) {
+            this.runningTask.cancel(false);
+            this.runningTask = null;
+        }
+        this.latestParameters = null;
+        this.latestKgkManager = null;
+    }
+
+    private void startDerivation() {
+        if (this.latestKgkManager.getKgkGeneration() !=
+                this.latestParameters.getKgkGeneration()) {
+            // The KGK was reset or replaced while the request waited.
+            this.cancel();
+            return;
+        }
+        this.runningTask = new GeneratePasswordTask(this);
+        this.runningTask.execute(
+                UTF8.encode(this.latestParameters.getDomain()),
+                UTF8.encode(this.latestParameters.getUsername()),
+                this.latestKgkManager.getKgk(),
+                this.latestParameters.getSalt(),
+                ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN)
+                        .putInt(this.latestParameters.getIterations()).array());
+    }
+
+    @Override
+    public void onPasswordGenerationFinished(PasswordGenerator generator) {
+        // Cancelled tasks never get here because cancel() is called on the main thread.
+        this.runningTask = null;
+        KgkManager kgkManager = this.latestKgkManager;
+        this.latestKgkManager = null;
+        if (generator != null) {
+            if (this.latestParameters.getKgkGeneration() == kgkManager.getKgkGeneration()) {
+                byte[] hashValue = generator.exportHashValue();
+                DerivedHashCache.getInstance().put(this.latestParameters, hashValue);
+                Clearer.zero(hashValue);
+            }
+            this.deliver(generator);
+        }
+    }
+
+    private void deliver(PasswordGenerator generator) {
+        GeneratePasswordTask.OnPasswordGeneratedListener passwordGeneratedListener =
+                this.passwordGeneratedListenerWeakRef.get();
+        if (passwordGeneratedListener != null) {
+            passwordGeneratedListener.onPasswordGenerationFinished(generator);
+        }
+    }
+}
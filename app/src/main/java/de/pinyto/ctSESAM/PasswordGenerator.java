@@ -1,8 +1,7 @@
 package de.pinyto.ctSESAM;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * This class handles the hashing and the creation of passwords. Please initialize first.
@@ -14,12 +13,27 @@ import java.util.List;
 public class PasswordGenerator {
 
     private byte[] hashValue;
+    private int[] hashWords;
+    private int[] dividend;
 
     public PasswordGenerator(byte[] domain,
                              byte[] username,
                              byte[] kgk,
                              byte[] salt,
                              int iterations) throws NotHashedException {
+        this(domain, username, kgk, salt, iterations, null);
+    }
+
+    /**
+     * Hashes like the other constructor but stops early if the signal reports a cancellation.
+     * In that case a NotHashedException is thrown.
+     */
+    public PasswordGenerator(byte[] domain,
+                             byte[] username,
+                             byte[] kgk,
+                             byte[] salt,
+                             int iterations,
+                             FastPBKDF2.CancellationSignal signal) throws NotHashedException {
         byte[] startValue = new byte[domain.length + username.length + kgk.length];
         int i = 0;
         while (i < domain.length) {
@@ -38,51 +52,205 @@ public class PasswordGenerator {
             throw new NotHashedException(Integer.toString(iterations) +
                     " iterations means the password is not hashed at all.");
         }
-        this.hashValue = PBKDF2.hmac("SHA512", startValue, salt, iterations);
+        this.hashValue = FastPBKDF2.hmac("SHA512", startValue, salt, iterations, signal);
         Clearer.zero(startValue);
+        if (this.hashValue == null) {
+            throw new NotHashedException("The hashing was cancelled.");
+        }
+        this.loadHashWords();
+    }
+
+    /**
+     * Creates a PasswordGenerator from a hash which was exported before.
+     */
+    PasswordGenerator(byte[] hashValue) {
+        this.hashValue = hashValue.clone();
+        this.loadHashWords();
+    }
+
+    /**
+     * Stores the hash as big-endian 32 bit words. The password is calculated by dividing
+     * these words so getPassword does not have to allocate a BigInteger.
+     */
+    private void loadHashWords() {
+        int wordCount = (this.hashValue.length + 3) / 4;
+        this.hashWords = new int[wordCount];
+        this.dividend = new int[wordCount];
+        int offset = wordCount * 4 - this.hashValue.length;
+        for (int i = 0; i < this.hashValue.length; i++) {
+            int bytePosition = offset + i;
+            this.hashWords[bytePosition / 4] |=
+                    (this.hashValue[i] & 0xff) << (8 * (3 - bytePosition % 4));
+        }
+    }
+
+    /**
+     * Divides the number in dividend[start..] by the divisor in place and returns the
+     * remainder. The divisor has to be positive.
+     */
+    private static int divide(int[] dividend, int start, int divisor) {
+        long remainder = 0;
+        for (int i = start; i < dividend.length; i++) {
+            remainder = (remainder << 32) | (dividend[i] & 0xffffffffL);
+            dividend[i] = (int) (remainder / divisor);
+            remainder = remainder % divisor;
+        }
+        return (int) remainder;
+    }
+
+    /**
+     * Returns a copy of the hash. The caller has to zero it.
+     */
+    byte[] exportHashValue() {
+        return this.hashValue.clone();
     }
 
     public String getPassword(PasswordSetting setting) {
-        byte[] positiveHashValue = new byte[hashValue.length + 1];
-        positiveHashValue[0] = 0;
-        System.arraycopy(hashValue, 0, positiveHashValue, 1, hashValue.length);
-        BigInteger hashNumber = new BigInteger(positiveHashValue);
-        Clearer.zero(positiveHashValue);
-        String password = "";
-        List<String> characterSet = setting.getCharacterSet();
-        List<String> digitsSet = setting.getDigitsCharacterSet();
-        List<String> lowerSet = setting.getLowerCaseLettersCharacterSet();
-        List<String> upperSet = setting.getUpperCaseLettersCharacterSet();
-        List<String> extraSet = setting.getExtraCharacterSet();
-        if (characterSet.size() > 0) {
-            String template = setting.getTemplate();
-            for (int i = 0; i < template.length(); i++) {
-                if (hashNumber.compareTo(BigInteger.ZERO) > 0) {
-                    List<String> set = characterSet;
-                    if (template.charAt(i) == 'a') {
-                        set = lowerSet;
-                    } else if (template.charAt(i) == 'A') {
-                        set = upperSet;
-                    } else if (template.charAt(i) == 'n') {
-                        set = digitsSet;
-                    } else if (template.charAt(i) == 'o') {
-                        set = extraSet;
-                    } else if (template.charAt(i) == 'x') {
-                        set = characterSet;
-                    }
-                    BigInteger setSize = BigInteger.valueOf(set.size());
-                    BigInteger[] divAndMod = hashNumber.divideAndRemainder(setSize);
-                    hashNumber = divAndMod[0];
-                    int mod = divAndMod[1].intValue();
-                    password += set.get(mod);
+        char[] password = new char[setting.getLength()];
+        int length = this.getPassword(setting, password);
+        String passwordString = new String(password, 0, length);
+        Clearer.zero(password);
+        return passwordString;
+    }
+
+    /**
+     * Writes the password for the setting into the supplied array which has to hold at
+     * least setting.getLength() characters. The result is the same as getPassword(setting)
+     * but nothing is allocated here.
+     *
+     * @param setting the setting which defines the template and the character sets
+     * @param password the array which receives the password
+     * @return the number of characters written
+     */
+    public synchronized int getPassword(PasswordSetting setting, char[] password) {
+        byte[] template = setting.getCompiledTemplate();
+        if (password.length < template.length) {
+            throw new IllegalArgumentException("The password array has room for " +
+                    Integer.toString(password.length) + " characters but the template needs " +
+                    Integer.toString(template.length) + ".");
+        }
+        if (setting.getCharacterSet().size() <= 0) {
+            return 0;
+        }
+        System.arraycopy(this.hashWords, 0, this.dividend, 0, this.hashWords.length);
+        int start = 0;
+        int length = 0;
+        for (int i = 0; i < template.length; i++) {
+            while (start < this.dividend.length && this.dividend[start] == 0) {
+                start++;
+            }
+            if (start < this.dividend.length) {
+                CharacterSet set = setting.getCharacterSet(template[i]);
+                int mod = divide(this.dividend, start, set.size());
+                password[length] = set.charAt(mod);
+                length++;
+            }
+        }
+        Clearer.zero(this.dividend);
+        return length;
+    }
+
+    /**
+     * Writes the passwords for several settings at once. Each setting is converted like in
+     * getPassword(setting, char[]) but the settings are sorted so that templates which start
+     * with the same character sets follow each other. The division state after every position
+     * is kept, so a template only has to convert the part after the prefix it shares with the
+     * previous one.
+     *
+     * @param settings the settings, usually clones of one setting with different templates
+     * @param passwords receives the password of settings[k] in passwords[k]
+     * @param lengths receives the number of characters written to passwords[k]
+     */
+    public synchronized void getPasswords(final PasswordSetting[] settings,
+                                          char[][] passwords, int[] lengths) {
+        int maxLength = 0;
+        Integer[] order = new Integer[settings.length];
+        for (int k = 0; k < settings.length; k++) {
+            int templateLength = settings[k].getCompiledTemplate().length;
+            if (passwords[k].length < templateLength) {
+                throw new IllegalArgumentException("The password array " + Integer.toString(k) +
+                        " has room for " + Integer.toString(passwords[k].length) +
+                        " characters but the template needs " +
+                        Integer.toString(templateLength) + ".");
+            }
+            maxLength = Math.max(maxLength, templateLength);
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return compareTemplates(settings[a], settings[b]);
+            }
+        });
+        int[][] states = new int[maxLength + 1][this.hashWords.length];
+        int[] starts = new int[maxLength + 1];
+        int[] counts = new int[maxLength + 1];
+        System.arraycopy(this.hashWords, 0, states[0], 0, this.hashWords.length);
+        PasswordSetting previous = null;
+        char[] previousPassword = null;
+        for (int k : order) {
+            PasswordSetting setting = settings[k];
+            byte[] template = setting.getCompiledTemplate();
+            if (setting.getCharacterSet().size() <= 0) {
+                lengths[k] = 0;
+                continue;
+            }
+            int shared = 0;
+            if (previous != null) {
+                shared = sharedPrefixLength(previous, setting);
+                System.arraycopy(previousPassword, 0, passwords[k], 0, counts[shared]);
+            }
+            for (int i = shared; i < template.length; i++) {
+                int[] state = states[i + 1];
+                System.arraycopy(states[i], 0, state, 0, state.length);
+                int start = starts[i];
+                int count = counts[i];
+                while (start < state.length && state[start] == 0) {
+                    start++;
                 }
+                if (start < state.length) {
+                    CharacterSet set = setting.getCharacterSet(template[i]);
+                    int mod = divide(state, start, set.size());
+                    passwords[k][count] = set.charAt(mod);
+                    count++;
+                }
+                starts[i + 1] = start;
+                counts[i + 1] = count;
             }
+            lengths[k] = counts[template.length];
+            previous = setting;
+            previousPassword = passwords[k];
+        }
+        for (int[] state : states) {
+            Clearer.zero(state);
+        }
+    }
+
+    private static int sharedPrefixLength(PasswordSetting a, PasswordSetting b) {
+        byte[] templateA = a.getCompiledTemplate();
+        byte[] templateB = b.getCompiledTemplate();
+        int i = 0;
+        while (i < templateA.length && i < templateB.length &&
+                a.getCharacterSet(templateA[i]) == b.getCharacterSet(templateB[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int compareTemplates(PasswordSetting a, PasswordSetting b) {
+        byte[] templateA = a.getCompiledTemplate();
+        byte[] templateB = b.getCompiledTemplate();
+        int i = sharedPrefixLength(a, b);
+        if (i < templateA.length && i < templateB.length) {
+            return a.getCharacterSet(templateA[i]).toString().compareTo(
+                    b.getCharacterSet(templateB[i]).toString());
         }
-        return password;
+        return templateA.length - templateB.length;
     }
 
     protected void finalize() throws Throwable {
         Clearer.zero(this.hashValue);
+        Clearer.zero(this.hashWords);
         super.finalize();
     }
 }
@@ -1,19 +1,21 @@
 package de.pinyto.ctSESAM;
 
 import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
 import android.util.Log;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Random;
@@ -33,12 +35,47 @@ public class PasswordSetting implements Cloneable {
     private byte[] salt;
     private Date cDate;
     private Date mDate;
-    private final String defaultCharacterSetDigits = "0123456789";
-    private final String defaultCharacterSetLowerCase = "abcdefghijklmnopqrstuvwxyz";
-    private final String defaultCharacterSetUpperCase = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private final String defaultCharacterSetExtra = "#!\"~|@^°$%&/()[]{}=-_+*<>;:.";
-    private String characterSetExtra;
+    private static final CharacterSet defaultCharacterSetDigits =
+            CharacterSet.get("0123456789");
+    private static final CharacterSet defaultCharacterSetLowerCase =
+            CharacterSet.get("abcdefghijklmnopqrstuvwxyz");
+    private static final CharacterSet defaultCharacterSetUpperCase =
+            CharacterSet.get("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+    private static final CharacterSet defaultCharacterSetExtra =
+            CharacterSet.get("#!\"~|@^°$%&/()[]{}=-_+*<>;:.");
+    static final byte SET_ALL = 0;
+    static final byte SET_LOWER_CASE = 1;
+    static final byte SET_UPPER_CASE = 2;
+    static final byte SET_DIGITS = 3;
+    static final byte SET_EXTRA = 4;
+    static final int CLASS_LOWER_CASE = 1 << SET_LOWER_CASE;
+    static final int CLASS_UPPER_CASE = 1 << SET_UPPER_CASE;
+    static final int CLASS_DIGITS = 1 << SET_DIGITS;
+    static final int CLASS_EXTRA = 1 << SET_EXTRA;
+    private static final ThreadLocal<DateFormat> dateFormat = new ThreadLocal<DateFormat>() {
+        @Override
+        protected DateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
+        }
+    };
+    private static final Pattern templatePattern =
+            Pattern.compile("(([01234567]);)?([aAnox]+)");
+    private static final int[] complexityOfClasses = new int[1 << (SET_EXTRA + 1)];
+    static {
+        Arrays.fill(complexityOfClasses, -1);
+        complexityOfClasses[CLASS_DIGITS] = 0;
+        complexityOfClasses[CLASS_LOWER_CASE] = 1;
+        complexityOfClasses[CLASS_UPPER_CASE] = 2;
+        complexityOfClasses[CLASS_DIGITS | CLASS_LOWER_CASE] = 3;
+        complexityOfClasses[CLASS_LOWER_CASE | CLASS_UPPER_CASE] = 4;
+        complexityOfClasses[CLASS_DIGITS | CLASS_LOWER_CASE | CLASS_UPPER_CASE] = 5;
+        complexityOfClasses[CLASS_DIGITS | CLASS_LOWER_CASE | CLASS_UPPER_CASE | CLASS_EXTRA] = 6;
+    }
+    private CharacterSet characterSetExtra;
+    private CharacterSet characterSet;
     private String template = "aAnoxxxxxx";
+    private byte[] compiledTemplate;
+    private int templateClasses;
     private boolean synced = false;
 
     PasswordSetting(String domain) {
@@ -46,7 +83,8 @@ public class PasswordSetting implements Cloneable {
         this.salt = Crypter.createSalt();
         this.cDate = Calendar.getInstance().getTime();
         this.mDate = this.cDate;
-        this.characterSetExtra = this.defaultCharacterSetExtra;
+        this.characterSetExtra = defaultCharacterSetExtra;
+        this.compileTemplate();
         this.calculateTemplate();
     }
 
@@ -54,6 +92,19 @@ public class PasswordSetting implements Cloneable {
         return super.clone();
     }
 
+    /**
+     * Zeroes the salt and drops the username, the url, the legacy password and the notes.
+     * Strings can not be overwritten, so they stay in memory until they are collected. Clones
+     * share the salt with this setting.
+     */
+    void clear() {
+        Clearer.zero(this.salt);
+        this.username = null;
+        this.url = null;
+        this.legacyPassword = null;
+        this.notes = null;
+    }
+
     public String getDomain() {
         return this.domain;
     }
@@ -106,46 +157,52 @@ public class PasswordSetting implements Cloneable {
 
     public String getDefaultCharacterSet() {
         String set = "";
-        set = set + this.defaultCharacterSetDigits;
-        set = set + this.defaultCharacterSetLowerCase;
-        set = set + this.defaultCharacterSetUpperCase;
-        set = set + this.defaultCharacterSetExtra;
+        set = set + defaultCharacterSetDigits;
+        set = set + defaultCharacterSetLowerCase;
+        set = set + defaultCharacterSetUpperCase;
+        set = set + defaultCharacterSetExtra;
         return set;
     }
 
     public String getLowerCaseCharacterSetAsString() {
-        return this.defaultCharacterSetLowerCase;
+        return defaultCharacterSetLowerCase.toString();
     }
 
     public String getUpperCaseCharacterSetAsString() {
-        return this.defaultCharacterSetUpperCase;
+        return defaultCharacterSetUpperCase.toString();
     }
 
     public String getDigitsCharacterSetAsString() {
-        return this.defaultCharacterSetDigits;
+        return defaultCharacterSetDigits.toString();
     }
 
-    public List<String> getCharacterSet() {
-        List<String> characterSet = new ArrayList<>();
-        String characters = this.getCharacterSetAsString();
-        for (int i = 0; i < characters.length(); i++) {
-            characterSet.add(Character.toString(characters.charAt(i)));
+    /**
+     * Returns the characters for the x positions of the template. The set is compiled when
+     * the template or the extra characters change so this does not allocate.
+     */
+    public CharacterSet getCharacterSet() {
+        if (this.characterSet == null) {
+            this.characterSet = CharacterSet.get(this.compileCharacterSet());
         }
-        return characterSet;
+        return this.characterSet;
     }
 
     public String getCharacterSetAsString() {
+        return this.getCharacterSet().toString();
+    }
+
+    private String compileCharacterSet() {
         String set = "";
-        if (this.getTemplate().contains("n")) {
+        if (this.usesClass(CLASS_DIGITS)) {
             set = set + this.getDigitsCharacterSetAsString();
         }
-        if (this.getTemplate().contains("a")) {
+        if (this.usesClass(CLASS_LOWER_CASE)) {
             set = set + this.getLowerCaseCharacterSetAsString();
         }
-        if (this.getTemplate().contains("A")) {
+        if (this.usesClass(CLASS_UPPER_CASE)) {
             set = set + this.getUpperCaseCharacterSetAsString();
         }
-        if (this.getTemplate().contains("o")) {
+        if (this.usesClass(CLASS_EXTRA)) {
             set = set + this.getExtraCharacterSetAsString();
         }
         if (set.length() <= 0) {
@@ -156,54 +213,48 @@ public class PasswordSetting implements Cloneable {
 
     public void setExtraCharacterSet(String extraCharacterSet) {
         if (extraCharacterSet == null || extraCharacterSet.length() <= 0) {
-            this.characterSetExtra = this.defaultCharacterSetExtra;
+            this.characterSetExtra = defaultCharacterSetExtra;
         } else {
-            this.characterSetExtra = extraCharacterSet;
-        }
-    }
-
-    public List<String> getExtraCharacterSet() {
-        List<String> extraCharacterSet = new ArrayList<>();
-        String characters = this.getExtraCharacterSetAsString();
-        for (int i = 0; i < characters.length(); i++) {
-            extraCharacterSet.add(Character.toString(characters.charAt(i)));
+            this.characterSetExtra = CharacterSet.get(extraCharacterSet);
         }
-        return extraCharacterSet;
+        this.characterSet = null;
     }
 
-    public String getExtraCharacterSetAsString() {
+    public CharacterSet getExtraCharacterSet() {
         if (this.characterSetExtra != null) {
             return this.characterSetExtra;
         } else {
-            return this.defaultCharacterSetExtra;
+            return defaultCharacterSetExtra;
         }
     }
 
-    public List<String> getDigitsCharacterSet() {
-        List<String> digitsCharacterSet = new ArrayList<>();
-        String characters = this.defaultCharacterSetDigits;
-        for (int i = 0; i < characters.length(); i++) {
-            digitsCharacterSet.add(Character.toString(characters.charAt(i)));
-        }
-        return digitsCharacterSet;
+    public String getExtraCharacterSetAsString() {
+        return this.getExtraCharacterSet().toString();
     }
 
-    public List<String> getLowerCaseLettersCharacterSet() {
-        List<String> lowerCaseLettersCharacterSet = new ArrayList<>();
-        String characters = this.defaultCharacterSetLowerCase;
-        for (int i = 0; i < characters.length(); i++) {
-            lowerCaseLettersCharacterSet.add(Character.toString(characters.charAt(i)));
-        }
-        return lowerCaseLettersCharacterSet;
+    public CharacterSet getDigitsCharacterSet() {
+        return defaultCharacterSetDigits;
+    }
+
+    public CharacterSet getLowerCaseLettersCharacterSet() {
+        return defaultCharacterSetLowerCase;
+    }
+
+    public CharacterSet getUpperCaseLettersCharacterSet() {
+        return defaultCharacterSetUpperCase;
     }
 
-    public List<String> getUpperCaseLettersCharacterSet() {
-        List<String> upperCaseLettersCharacterSet = new ArrayList<>();
-        String characters = this.defaultCharacterSetUpperCase;
-        for (int i = 0; i < characters.length(); i++) {
-            upperCaseLettersCharacterSet.add(Character.toString(characters.charAt(i)));
+    /**
+     * Returns the set for one of the indices of the compiled template.
+     */
+    CharacterSet getCharacterSet(byte setIndex) {
+        switch (setIndex) {
+            case SET_LOWER_CASE: return defaultCharacterSetLowerCase;
+            case SET_UPPER_CASE: return defaultCharacterSetUpperCase;
+            case SET_DIGITS: return defaultCharacterSetDigits;
+            case SET_EXTRA: return this.getExtraCharacterSet();
+            default: return this.getCharacterSet();
         }
-        return upperCaseLettersCharacterSet;
     }
 
     public byte[] getSalt() {
@@ -236,18 +287,29 @@ public class PasswordSetting implements Cloneable {
         return this.cDate;
     }
 
+    /**
+     * Parses a date in the format of cDate and mDate. The DateFormat is kept per thread so
+     * loading many settings does not create a new one for every date.
+     */
+    static Date parseDate(String date) throws ParseException {
+        return dateFormat.get().parse(date);
+    }
+
+    static String formatDate(Date date) {
+        return dateFormat.get().format(date);
+    }
+
     public String getCreationDate() {
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
-        return df.format(this.cDate);
+        return formatDate(this.cDate);
     }
 
     public void setCreationDate(String cDate) {
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
         try {
-            if (df.parse(cDate).compareTo(this.cDate) != 0) {
+            Date parsed = parseDate(cDate);
+            if (parsed.compareTo(this.cDate) != 0) {
                 this.synced = false;
             }
-            this.cDate = df.parse(cDate);
+            this.cDate = parsed;
         } catch (ParseException e) {
             System.out.println("This date has a wrong format: " + cDate);
             e.printStackTrace();
@@ -259,8 +321,7 @@ public class PasswordSetting implements Cloneable {
     }
 
     public String getModificationDate() {
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
-        return df.format(this.mDate);
+        return formatDate(this.mDate);
     }
 
     public Date getMDate() {
@@ -268,12 +329,12 @@ public class PasswordSetting implements Cloneable {
     }
 
     public void setModificationDate(String mDate) {
-        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.ENGLISH);
         try {
-            if (df.parse(mDate).compareTo(this.mDate) != 0) {
+            Date parsed = parseDate(mDate);
+            if (parsed.compareTo(this.mDate) != 0) {
                 this.synced = false;
             }
-            this.mDate = df.parse(mDate);
+            this.mDate = parsed;
         } catch (ParseException e) {
             System.out.println("This date has a wrong format: " + mDate);
             e.printStackTrace();
@@ -335,11 +396,10 @@ public class PasswordSetting implements Cloneable {
         }
     }
 
-    private String ShuffleString(String s)
+    private void shuffle(char[] array)
     {
         int index;
         char temp;
-        char[] array = s.toCharArray();
         Random random = new Random();
         for (int i = array.length - 1; i > 0; i--)
         {
@@ -348,44 +408,44 @@ public class PasswordSetting implements Cloneable {
             array[index] = array[i];
             array[i] = temp;
         }
-        return String.valueOf(array);
     }
 
     private void calculateTemplate(boolean useLowerCase,
                                    boolean useUpperCase,
                                    boolean useDigits,
                                    boolean useExtra) {
-        int targetLength = this.getLength();
-        this.template = "";
+        char[] newTemplate = new char[this.getLength()];
         boolean aInserted = false;
         boolean AInserted = false;
         boolean nInserted = false;
         boolean oInserted = false;
-        for (int i = 0; i < targetLength; i++) {
+        for (int i = 0; i < newTemplate.length; i++) {
             if (useLowerCase && !aInserted) {
-                this.template = this.template + "a";
+                newTemplate[i] = 'a';
                 aInserted = true;
             } else if (useUpperCase && !AInserted) {
-                this.template = this.template + "A";
+                newTemplate[i] = 'A';
                 AInserted = true;
             } else if (useDigits && !nInserted) {
-                this.template = this.template + "n";
+                newTemplate[i] = 'n';
                 nInserted = true;
             } else if (useExtra && !oInserted) {
-                this.template = this.template + "o";
+                newTemplate[i] = 'o';
                 oInserted = true;
             } else {
-                this.template = this.template + "x";
+                newTemplate[i] = 'x';
             }
         }
-        this.template = this.ShuffleString(this.template);
+        this.shuffle(newTemplate);
+        this.template = String.valueOf(newTemplate);
+        this.compileTemplate();
     }
 
     private void calculateTemplate() {
-        boolean use_lower_case = this.getTemplate().contains("a");
-        boolean use_upper_case = this.getTemplate().contains("A");
-        boolean use_digits = this.getTemplate().contains("n");
-        boolean use_extra = this.getTemplate().contains("o");
+        boolean use_lower_case = this.usesClass(CLASS_LOWER_CASE);
+        boolean use_upper_case = this.usesClass(CLASS_UPPER_CASE);
+        boolean use_digits = this.usesClass(CLASS_DIGITS);
+        boolean use_extra = this.usesClass(CLASS_EXTRA);
         if (!use_lower_case && !use_upper_case && !use_digits && !use_extra) {
             use_lower_case = true;
             use_upper_case = true;
@@ -395,45 +455,66 @@ public class PasswordSetting implements Cloneable {
         this.calculateTemplate(use_lower_case, use_upper_case, use_digits, use_extra);
     }
 
+    /**
+     * Translates the template to set indices and collects the classes it contains. This is
+     * done whenever the template changes so queries about the template do not scan it.
+     */
+    private void compileTemplate() {
+        byte[] compiled = new byte[this.template.length()];
+        int classes = 0;
+        for (int i = 0; i < compiled.length; i++) {
+            switch (this.template.charAt(i)) {
+                case 'a': compiled[i] = SET_LOWER_CASE;
+                          break;
+                case 'A': compiled[i] = SET_UPPER_CASE;
+                          break;
+                case 'n': compiled[i] = SET_DIGITS;
+                          break;
+                case 'o': compiled[i] = SET_EXTRA;
+                          break;
+                default:  compiled[i] = SET_ALL;
+            }
+            if (compiled[i] != SET_ALL) {
+                classes |= 1 << compiled[i];
+            }
+        }
+        this.compiledTemplate = compiled;
+        this.templateClasses = classes;
+        this.characterSet = null;
+    }
+
+    /**
+     * Returns the template as set indices (SET_ALL, SET_LOWER_CASE, ...). The array is shared
+     * and must not be modified.
+     */
+    byte[] getCompiledTemplate() {
+        return this.compiledTemplate;
+    }
+
+    /**
+     * Checks if the template contains a position for the class (CLASS_DIGITS, ...).
+     */
+    boolean usesClass(int characterClass) {
+        return (this.templateClasses & characterClass) != 0;
+    }
+
     public String getTemplate() {
         return this.template;
     }
 
     public void setTemplate(String template) {
-        Matcher matcher = Pattern.compile("(([01234567]);)?([aAnox]+)").matcher(template);
+        Matcher matcher = templatePattern.matcher(template);
         if (matcher.matches() && matcher.groupCount() >= 3) {
             if (matcher.group(2) != null) {
                 this.setComplexity(Integer.parseInt(matcher.group(2)));
             }
             this.template = matcher.group(3);
+            this.compileTemplate();
         }
     }
 
     public int getComplexity() {
-        if (this.getTemplate().contains("n") && !this.getTemplate().contains("a") &&
-                !this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 0;
-        } else if (!this.getTemplate().contains("n") && this.getTemplate().contains("a") &&
-                !this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 1;
-        } else if (!this.getTemplate().contains("n") && !this.getTemplate().contains("a") &&
-                this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 2;
-        } else if (this.getTemplate().contains("n") && this.getTemplate().contains("a") &&
-                !this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 3;
-        } else if (!this.getTemplate().contains("n") && this.getTemplate().contains("a") &&
-                this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 4;
-        } else if (this.getTemplate().contains("n") && this.getTemplate().contains("a") &&
-                this.getTemplate().contains("A") && !this.getTemplate().contains("o")) {
-            return 5;
-        } else if (this.getTemplate().contains("n") && this.getTemplate().contains("a") &&
-                this.getTemplate().contains("A") && this.getTemplate().contains("o")) {
-            return 6;
-        } else {
-            return -1;
-        }
+        return complexityOfClasses[this.templateClasses];
     }
 
     public void setComplexity(int complexity) {
@@ -480,6 +561,38 @@ public class PasswordSetting implements Cloneable {
         return domainObject;
     }
 
+    /**
+     * Writes this setting as the next JSON object of the writer. The fields are the same as
+     * in toJSON but no JSONObject is created.
+     *
+     * @param writer a JsonWriter which expects a value
+     */
+    public void writeJSON(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        writer.name("domain").value(this.getDomain());
+        if (this.url != null && this.url.length() > 0) {
+            writer.name("url").value(this.getUrl());
+        }
+        if (this.username != null && this.username.length() > 0) {
+            writer.name("username").value(this.getUsername());
+        }
+        if (this.legacyPassword != null && this.legacyPassword.length() > 0) {
+            writer.name("legacyPassword").value(this.getLegacyPassword());
+        }
+        if (this.notes != null && this.notes.length() > 0) {
+            writer.name("notes").value(this.getNotes());
+        }
+        writer.name("iterations").value(this.getIterations());
+        if (this.salt != null && this.salt.length > 0) {
+            writer.name("salt").value(Base64.encodeToString(this.getSalt(), Base64.DEFAULT));
+        }
+        writer.name("cDate").value(this.getCreationDate());
+        writer.name("mDate").value(this.getModificationDate());
+        writer.name("extras").value(this.getExtraCharacterSetAsString());
+        writer.name("passwordTemplate").value(this.getTemplate());
+        writer.endObject();
+    }
+
     public void loadFromJSON(JSONObject loadedSetting) throws JSONException {
         if (loadedSetting.has("domain")) {
             this.setDomain(loadedSetting.getString("domain"));
@@ -525,4 +638,111 @@ public class PasswordSetting implements Cloneable {
             this.calculateTemplate(false, false, false, true);
         }
     }
+
+    /**
+     * Reads the next JSON object of the reader into this setting. The result is the same as
+     * with loadFromJSON(JSONObject) but the fields are taken from the stream directly. They
+     * are applied in the same order so the dates are corrected the same way.
+     *
+     * @param reader a JsonReader which is positioned before a setting object
+     */
+    public void loadFromJSON(JsonReader reader) throws IOException {
+        String loadedDomain = null;
+        String loadedUrl = null;
+        String loadedUsername = null;
+        String loadedLegacyPassword = null;
+        String loadedNotes = null;
+        String loadedIterations = null;
+        String loadedSalt = null;
+        String loadedCDate = null;
+        String loadedMDate = null;
+        String loadedExtras = null;
+        String loadedTemplate = null;
+        String loadedLength = null;
+        String loadedUsedCharacters = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "domain": loadedDomain = reader.nextString();
+                               break;
+                case "url": loadedUrl = reader.nextString();
+                            break;
+                case "username": loadedUsername = reader.nextString();
+                                 break;
+                case "legacyPassword": loadedLegacyPassword = reader.nextString();
+                                       break;
+                case "notes": loadedNotes = reader.nextString();
+                              break;
+                case "iterations": loadedIterations = reader.nextString();
+                                   break;
+                case "salt": loadedSalt = reader.nextString();
+                             break;
+                case "cDate": loadedCDate = reader.nextString();
+                              break;
+                case "mDate": loadedMDate = reader.nextString();
+                              break;
+                case "extras": loadedExtras = reader.nextString();
+                               break;
+                case "passwordTemplate": loadedTemplate = reader.nextString();
+                                         break;
+                case "length": loadedLength = reader.nextString();
+                               break;
+                case "usedCharacters": loadedUsedCharacters = reader.nextString();
+                                       break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        try {
+            if (loadedDomain != null) {
+                this.setDomain(loadedDomain);
+            }
+            if (loadedUrl != null) {
+                this.setUrl(loadedUrl);
+            }
+            if (loadedUsername != null) {
+                this.setUsername(loadedUsername);
+            }
+            if (loadedLegacyPassword != null) {
+                this.setLegacyPassword(loadedLegacyPassword);
+            }
+            if (loadedNotes != null) {
+                this.setNotes(loadedNotes);
+            }
+            if (loadedIterations != null) {
+                this.setIterations(Integer.parseInt(loadedIterations));
+            }
+            if (loadedSalt != null) {
+                this.setSalt(Base64.decode(loadedSalt, Base64.DEFAULT));
+            }
+            if (loadedCDate != null) {
+                this.setCreationDate(loadedCDate);
+            }
+            if (loadedMDate != null) {
+                this.setModificationDate(loadedMDate);
+            }
+            if (loadedExtras != null) {
+                this.setExtraCharacterSet(loadedExtras);
+            }
+            if (loadedTemplate != null) {
+                this.setTemplate(loadedTemplate);
+            }
+            if (loadedLength != null && loadedUsedCharacters != null && loadedTemplate == null) {
+                String conversionTemplate = "o";
+                for (int i = 1; i < Integer.parseInt(loadedLength); i++) {
+                    conversionTemplate = conversionTemplate + "x";
+                }
+                this.template = conversionTemplate;
+                this.setExtraCharacterSet(loadedUsedCharacters);
+                this.calculateTemplate(false, false, false, true);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("A number in the setting has a wrong format.", e);
+        }
+    }
 }
@@ -6,7 +6,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.widget.Toolbar;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 
@@ -20,6 +19,9 @@ public class PasswordSettingsListActivity extends SyncServiceEnabledActivity
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        if (isFinishing()) {
+            return;
+        }
         setContentView(R.layout.activity_password_settings_list);
         listScreen = (PasswordSettingsListFragment) getFragmentManager().findFragmentById(
                 R.id.passwordSettingsListFragment);
@@ -36,7 +38,9 @@ public class PasswordSettingsListActivity extends SyncServiceEnabledActivity
     @Override
     protected void onResume() {
         super.onResume();
-        Log.d("list resume: KGK mng", kgkManager.toString());
+        if (isFinishing()) {
+            return;
+        }
         listScreen.setKgkAndSettingsManager(kgkManager, settingsManager);
     }
 
@@ -49,7 +53,6 @@ public class PasswordSettingsListActivity extends SyncServiceEnabledActivity
     @Override
     public void onSettingSelected(PasswordSetting setting) {
         Intent intent = new Intent(this, DomainDetailsActivity.class);
-        intent.putExtra(UnlockActivity.KEYIVKEY, kgkManager.exportKeyIv());
         intent.putExtra(DOMAIN, setting.getDomain());
         startActivity(intent);
     }
@@ -57,7 +60,6 @@ public class PasswordSettingsListActivity extends SyncServiceEnabledActivity
     @Override
     public void onNewSetting(PasswordSetting setting) {
         Intent intent = new Intent(this, DomainDetailsActivity.class);
-        intent.putExtra(UnlockActivity.KEYIVKEY, kgkManager.exportKeyIv());
         intent.putExtra(DOMAIN, setting.getDomain());
         intent.putExtra(ISNEWSETTING, true);
         startActivity(intent);
@@ -28,7 +28,6 @@ import java.util.LinkedList;
  */
 public class PasswordSettingsListFragment extends Fragment
         implements AdapterView.OnItemClickListener {
-    public static final String KEYIVKEY = "de.pinyto.ctsesam.KEYIV";
     private OnSettingSelected settingSelectedListener;
     private OnNewSetting newSettingListener;
     private KgkManager kgkManager;
@@ -53,16 +52,6 @@ public class PasswordSettingsListFragment extends Fragment
         return fragment;
     }
 
-    @Override
-    public void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        if (savedInstanceState != null) {
-            kgkManager = new KgkManager(getActivity(),
-                    savedInstanceState.getByteArray(KEYIVKEY));
-            settingsManager = new PasswordSettingsManager(getActivity());
-        }
-    }
-
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -92,16 +81,16 @@ public class PasswordSettingsListFragment extends Fragment
         }
     }
 
-    @Override
-    public void onSaveInstanceState(Bundle savedInstanceState) {
-        savedInstanceState.putByteArray(KEYIVKEY, kgkManager.exportKeyIv());
-    }
-
     @Override
     public void onPause() {
+        if (UnlockedSession.isLocked(settingsManager)) {
+            // An empty list after locking does not mean that the settings were deleted.
+            super.onPause();
+            return;
+        }
         if (settingsManager.getDomainList().length > 0) {
-            if (kgkManager.hasKgk()) settingsManager.storeLocalSettings(kgkManager);
-        } else {
+            if (kgkManager.hasKgk()) settingsManager.writeLocalSettings();
+        } else if (kgkManager.hasKgk()) {
             settingsManager.deleteAllSettings();
             kgkManager.deleteKgkAndSettings();
         }
@@ -110,14 +99,13 @@ public class PasswordSettingsListFragment extends Fragment
 
     @Override
     public void onDetach() {
-        kgkManager.reset();
+        settingsManager.flushLocalSettings();
         super.onDetach();
         settingSelectedListener = null;
     }
 
     @Override
     public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
-        settingsManager.storeLocalSettings(kgkManager);
         this.settingSelectedListener.onSettingSelected(
                 settingsManager.getSetting(filteredDomains.get(i)));
     }
@@ -140,6 +128,9 @@ public class PasswordSettingsListFragment extends Fragment
                                          PasswordSettingsManager newSettingsManager) {
         this.kgkManager = newKgkManager;
         this.settingsManager = newSettingsManager;
+        if (UnlockedSession.isLocked(settingsManager)) {
+            return;
+        }
         setListeners();
         updateList();
     }
@@ -183,7 +174,7 @@ public class PasswordSettingsListFragment extends Fragment
             public void onClick(View view) {
                 PasswordSetting newSetting = new PasswordSetting(domainEntry.getText().toString());
                 settingsManager.setSetting(newSetting);
-                settingsManager.storeLocalSettings(kgkManager);
+                settingsManager.requestStoreLocalSettings(kgkManager);
                 view.setVisibility(View.INVISIBLE);
                 updateList();
                 if (newSettingListener != null) newSettingListener.onNewSetting(newSetting);
@@ -6,221 +6,586 @@ import android.util.Base64;
 import android.util.Log;
 import android.widget.Toast;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.text.DateFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
+import java.util.zip.ZipException;
 
 /**
  * Use this class to manage password settings. It will store them internally and it will also
  * pack them for synchronization.
+ *
+ * The settings are kept in a map by domain. Two secondary indices find the settings for the
+ * host of an url and for a username. Settings are indexed when they are added with setSetting
+ * or loaded, so changes to the url or username of a setting have to be saved with setSetting.
  */
 public class PasswordSettingsManager {
+    /**
+     * The local settings are encrypted with iv2 of the KGK block.
+     */
+    static final int SETTINGS_FORMAT_KGK_IV = 1;
+    /**
+     * The local settings start with their own IV. The key stays the same as long as salt2
+     * does not change, so a save does not derive it again.
+     */
+    static final int SETTINGS_FORMAT_OWN_IV = 2;
+    /**
+     * Every setting is stored in its own row of the SettingsDatabase. Only the KGK block
+     * remains in the SharedPreferences.
+     */
+    static final int SETTINGS_FORMAT_DATABASE = 3;
     private SharedPreferences savedDomains;
     private Context contentContext;
-    private Set<PasswordSetting> settings;
+    private Map<String, PasswordSetting> settings;
+    private Map<String, Set<String>> domainsByHost;
+    private Map<String, Set<String>> domainsByUsername;
+    private Map<String, String> indexedHosts;
+    private Map<String, String> indexedUsernames;
+    private final SettingsDatabase database;
+    private final Set<String> changedDomains = new HashSet<>();
+    private final Set<String> deletedDomains = new HashSet<>();
+    // salt2 of the stored rows. All settings are written again if it differs.
+    private byte[] storedSalt2;
+    // Increases with every change of the settings which the export data contains.
+    private long revision = 0;
+    private byte[] exportData;
+    private long exportRevision;
+    private int exportKgkGeneration;
+    private KgkManager exportKgkManager;
+    private final SettingsPersistenceScheduler persistenceScheduler =
+            new SettingsPersistenceScheduler(new SettingsPersistenceScheduler.WritePreparer() {
+                @Override
+                public Runnable prepareWrite(KgkManager kgkManager) {
+                    return prepareLocalSettingsWrite(kgkManager);
+                }
+            });
 
     PasswordSettingsManager(Context contentContext) {
         this.contentContext = contentContext;
         this.savedDomains = contentContext.getSharedPreferences(
                 "savedDomains", Context.MODE_PRIVATE);
-        this.settings = new HashSet<>();
+        this.settings = new HashMap<>();
+        this.domainsByHost = new HashMap<>();
+        this.domainsByUsername = new HashMap<>();
+        this.indexedHosts = new HashMap<>();
+        this.indexedUsernames = new HashMap<>();
+        this.database = new SettingsDatabase(contentContext);
     }
 
     private Crypter getSettingsCrypter(KgkManager kgkManager) {
-        byte[] salt2 = kgkManager.getSalt2();
-        byte[] iv2 = kgkManager.getIv2();
-        byte[] kgk = kgkManager.getKgk();
-        byte[] settingsKey = Crypter.createKey(kgk, salt2);
+        return createSettingsCrypter(kgkManager.getSettingsKey(), kgkManager.getIv2());
+    }
+
+    /**
+     * Creates the crypter for the settings. The settingsKey is zeroed.
+     */
+    private static Crypter createSettingsCrypter(byte[] settingsKey, byte[] iv) {
         byte[] settingsKeyIv = new byte[48];
         for (int i = 0; i < settingsKey.length; i++) {
             settingsKeyIv[i] = settingsKey[i];
             settingsKey[i] = 0x00;
         }
-        System.arraycopy(iv2, 0, settingsKeyIv, settingsKey.length, iv2.length);
+        System.arraycopy(iv, 0, settingsKeyIv, settingsKey.length, iv.length);
         return new Crypter(settingsKeyIv);
     }
 
+    /**
+     * Loads the stored settings. Settings in an older format are moved into the database
+     * shortly afterwards, so this has to be called on the main thread.
+     */
     public void loadLocalSettings(KgkManager kgkManager) throws WrongPasswordException {
+        this.applyLocalSettings(kgkManager, this.decodeLocalSettings(kgkManager));
+    }
+
+    /**
+     * Reads, decrypts and parses the stored settings without changing this manager, so it
+     * may run on a background thread. Hand the result to applyLocalSettings on the main
+     * thread.
+     */
+    LoadedSettings decodeLocalSettings(KgkManager kgkManager) throws WrongPasswordException {
+        return this.decodeLocalSettings(kgkManager, this.prefetchLocalSettings());
+    }
+
+    /**
+     * Does the part of loading which needs no key: it reads the format, decodes the Base64
+     * of a settings blob and opens the database. The unlock task runs this while the key is
+     * derived from the password. It first waits for running writes, e.g. of a manager which
+     * was just locked, so it reads what they stored.
+     */
+    PrefetchedSettings prefetchLocalSettings() {
+        SettingsPersistenceScheduler.waitForWrites();
+        int format = this.savedDomains.getInt("settingsFormat", SETTINGS_FORMAT_KGK_IV);
+        if (format == SETTINGS_FORMAT_DATABASE) {
+            this.database.open();
+            return new PrefetchedSettings(format, null);
+        }
+        return new PrefetchedSettings(format, Base64.decode(
+                this.savedDomains.getString("encryptedSettings", ""),
+                Base64.DEFAULT));
+    }
+
+    /**
+     * Decrypts and parses the settings which prefetchLocalSettings found.
+     */
+    LoadedSettings decodeLocalSettings(KgkManager kgkManager, PrefetchedSettings prefetched)
+            throws WrongPasswordException {
         if (!kgkManager.hasKgk()) {
             throw new WrongPasswordException("KGK manager has no KGK");
         }
-        Crypter settingsCrypter = this.getSettingsCrypter(kgkManager);
-        byte[] encrypted = Base64.decode(
-                this.savedDomains.getString("encryptedSettings", ""),
-                Base64.DEFAULT);
-        if (encrypted.length < 40) {
-            return;
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        int format = prefetched.format;
+        if (format == SETTINGS_FORMAT_DATABASE) {
+            byte[] settingsKey = kgkManager.getSettingsKey();
+            try {
+                this.database.load(settingsKey, decoder);
+            } finally {
+                Clearer.zero(settingsKey);
+            }
+            return new LoadedSettings(decoder, false, kgkManager.getSalt2().clone());
+        }
+        boolean found = this.decodeLocalBlob(kgkManager, format, prefetched.encryptedBlob,
+                decoder);
+        return new LoadedSettings(decoder, found, null);
+    }
+
+    /**
+     * Adds the decoded settings to this manager and indexes them. This has to be called on
+     * the main thread.
+     */
+    void applyLocalSettings(KgkManager kgkManager, LoadedSettings loadedSettings) {
+        if (loadedSettings.storedSalt2 != null) {
+            this.storedSalt2 = loadedSettings.storedSalt2;
+        }
+        if (loadedSettings.needsMigration) {
+            this.persistenceScheduler.request(kgkManager);
+        }
+        Set<String> syncedDomains = loadedSettings.decoder.getSyncedDomains();
+        for (Map.Entry<String, PasswordSetting> entry :
+                loadedSettings.decoder.getSettings().entrySet()) {
+            String key = entry.getKey();
+            PasswordSetting loaded = entry.getValue();
+            PasswordSetting setting = this.settings.get(key);
+            // Settings which were changed after they were stored are kept.
+            if (setting == null || loaded.getMDate().after(setting.getMDate())) {
+                loaded.setSynced(syncedDomains.contains(key));
+                this.putSetting(loaded);
+            }
+        }
+    }
+
+    /**
+     * Decodes the settings which were stored as one blob before the settings database existed.
+     * They are moved into the database after loading.
+     *
+     * @return false if there are no stored settings
+     */
+    private boolean decodeLocalBlob(KgkManager kgkManager, int format, byte[] encrypted,
+                                    LocalSettingsDecoder decoder)
+            throws WrongPasswordException {
+        Crypter settingsCrypter;
+        if (format == SETTINGS_FORMAT_OWN_IV) {
+            if (encrypted.length < 16 + 40) {
+                return false;
+            }
+            settingsCrypter = createSettingsCrypter(kgkManager.getSettingsKey(),
+                    Arrays.copyOfRange(encrypted, 0, 16));
+            encrypted = Arrays.copyOfRange(encrypted, 16, encrypted.length);
+        } else {
+            if (encrypted.length < 40) {
+                return false;
+            }
+            settingsCrypter = this.getSettingsCrypter(kgkManager);
         }
         byte[] decrypted = settingsCrypter.decrypt(encrypted);
         if (decrypted.length < 35) {
             throw new WrongPasswordException("wrong length: too short");
         }
-        String decompressedSettings = Packer.decompress(decrypted);
-        if (decompressedSettings.length() <= 0) {
+        Reader decompressedSettings = Packer.decompressToReader(decrypted);
+        if (decompressedSettings == null) {
             throw new WrongPasswordException("unable to decompress");
         }
         try {
-            JSONObject decryptedObject = new JSONObject(decompressedSettings);
-            JSONObject decryptedSettings = decryptedObject.getJSONObject("settings");
-            JSONArray syncedSettings = decryptedObject.getJSONArray("synced");
-            Iterator<String> keys = decryptedSettings.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                JSONObject settingObject = decryptedSettings.getJSONObject(key);
-                boolean found = false;
-                for (PasswordSetting setting : this.settings) {
-                    if (setting.getDomain().contentEquals(key)) {
-                        found = true;
-                        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss",
-                                Locale.ENGLISH);
-                        Date modifiedRemote = df.parse(settingObject.getString("mDate"));
-                        if (modifiedRemote.after(setting.getMDate())) {
-                            setting.loadFromJSON(settingObject);
-                            boolean foundInSynced = false;
-                            for (int i = 0; i < syncedSettings.length(); i++) {
-                                if (syncedSettings.getString(i).contentEquals(key)) {
-                                    foundInSynced = true;
-                                }
-                            }
-                            setting.setSynced(foundInSynced);
-                        }
-                    }
-                }
-                if (!found) {
-                    PasswordSetting newSetting = new PasswordSetting(key);
-                    newSetting.loadFromJSON(settingObject);
-                    boolean foundInSynced = false;
-                    for (int i = 0; i < syncedSettings.length(); i++) {
-                        if (syncedSettings.getString(i).contentEquals(key)) {
-                            foundInSynced = true;
-                        }
-                    }
-                    newSetting.setSynced(foundInSynced);
-                    this.settings.add(newSetting);
-                }
-            }
-        } catch (JSONException jsonError) {
+            decoder.decode(decompressedSettings);
+        } catch (ZipException zipError) {
+            throw new WrongPasswordException("unable to decompress");
+        } catch (IOException jsonError) {
+            Log.d("Settings loading error", "The loaded settings are not in JSON format.");
+            jsonError.printStackTrace();
+        } catch (IllegalStateException jsonError) {
             Log.d("Settings loading error", "The loaded settings are not in JSON format.");
             jsonError.printStackTrace();
-        } catch (ParseException timeFormatError) {
-            Log.d("Settings loading error",
-                    "The loaded settings contain time information in a wrong format.");
-            timeFormatError.printStackTrace();
+        } finally {
+            try {
+                decompressedSettings.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        return true;
     }
 
+    /**
+     * Encrypts and stores the settings at once. Use requestStoreLocalSettings on the main
+     * thread to write them in the background.
+     */
     public void storeLocalSettings(KgkManager kgkManager) {
-        kgkManager.freshSalt2();
-        kgkManager.freshIv2();
-        Crypter settingsCrypter = this.getSettingsCrypter(kgkManager);
-        JSONObject storeStructure = new JSONObject();
-        try {
-            storeStructure.put("settings", this.getSettingsAsJSON());
-            storeStructure.put("synced", this.getSyncedSettings());
-        } catch (JSONException jsonError) {
-            Log.d("Settings saving error", "Could not construct JSON structure for storage.");
-            jsonError.printStackTrace();
+        this.persistenceScheduler.request(kgkManager);
+        this.persistenceScheduler.flush();
+    }
+
+    /**
+     * Marks the settings as changed. They are written in the background shortly afterwards
+     * and bursts of changes are written only once. Call writeLocalSettings when the user
+     * leaves a screen.
+     */
+    public void requestStoreLocalSettings(KgkManager kgkManager) {
+        this.persistenceScheduler.request(kgkManager);
+    }
+
+    /**
+     * Starts writing pending changes without waiting for them. The data of the write is
+     * copied, so the KgkManager may be reset afterwards.
+     */
+    public void writeLocalSettings() {
+        this.persistenceScheduler.writePending();
+    }
+
+    /**
+     * Writes pending changes and waits until they are stored. This blocks the main thread,
+     * so only call it when the process may end afterwards.
+     */
+    public void flushLocalSettings() {
+        this.persistenceScheduler.flush();
+    }
+
+    /**
+     * Runs the action on the main thread after the started writes have finished. The
+     * written copies share the salts with the loaded settings, so clearLoadedSettings has
+     * to wait for them.
+     */
+    void afterLocalSettingsWritten(Runnable action) {
+        this.persistenceScheduler.afterWrites(action);
+    }
+
+    /**
+     * Copies the changed settings and the cached settings key for a write. All settings are
+     * copied if the rows were written with a different salt2 or were not loaded. The KGK
+     * block is encrypted here so it matches the key even if the KgkManager changes before
+     * the write runs.
+     */
+    private Runnable prepareLocalSettingsWrite(KgkManager kgkManager) {
+        if (!kgkManager.hasKgk()) {
+            return null;
         }
-        SharedPreferences.Editor savedDomainsEditor = savedDomains.edit();
-        byte[] encryptedSettings = settingsCrypter.encrypt(
-                Packer.compress(storeStructure.toString()));
-        savedDomainsEditor.putString("encryptedSettings",
-                Base64.encodeToString(
-                        encryptedSettings,
-                        Base64.DEFAULT));
-        savedDomainsEditor.apply();
-        kgkManager.storeLocalKgkBlock();
+        byte[] salt2 = kgkManager.getSalt2();
+        boolean complete = !Arrays.equals(this.storedSalt2, salt2);
+        Collection<String> domains = complete ? this.settings.keySet() : this.changedDomains;
+        List<PasswordSetting> snapshot = new ArrayList<>(domains.size());
+        for (String domain : domains) {
+            PasswordSetting setting = this.settings.get(domain);
+            if (setting == null) {
+                continue;
+            }
+            try {
+                snapshot.add((PasswordSetting) setting.clone());
+            } catch (CloneNotSupportedException e) {
+                e.printStackTrace();
+            }
+        }
+        List<String> deleted = complete ?
+                Collections.<String>emptyList() : new ArrayList<>(this.deletedDomains);
+        this.changedDomains.clear();
+        this.deletedDomains.clear();
+        if (!complete && snapshot.isEmpty() && deleted.isEmpty()) {
+            return null;
+        }
+        this.storedSalt2 = salt2.clone();
+        return new LocalSettingsWrite(this.savedDomains, this.database, snapshot, deleted,
+                complete, kgkManager.getSettingsKey(),
+                complete ? kgkManager.getEncryptedKgk() : null);
     }
 
-    public PasswordSetting getSetting(String domain) {
-        for (PasswordSetting setting : this.settings) {
-            if (setting.getDomain().contentEquals(domain)) {
-                return setting;
+    /**
+     * Writes a copy of the changed settings to the database. After a complete write the KGK
+     * block and the format are stored and the settings blob of the former formats is removed.
+     * This runs on the writer thread of the SettingsPersistenceScheduler.
+     */
+    private static class LocalSettingsWrite implements Runnable {
+        private final SharedPreferences savedDomains;
+        private final SettingsDatabase database;
+        private final List<PasswordSetting> settings;
+        private final List<String> deletedDomains;
+        private final boolean complete;
+        private final byte[] settingsKey;
+        private final byte[] encryptedKgkBlock;
+
+        LocalSettingsWrite(SharedPreferences savedDomains, SettingsDatabase database,
+                           List<PasswordSetting> settings, List<String> deletedDomains,
+                           boolean complete, byte[] settingsKey, byte[] encryptedKgkBlock) {
+            this.savedDomains = savedDomains;
+            this.database = database;
+            this.settings = settings;
+            this.deletedDomains = deletedDomains;
+            this.complete = complete;
+            this.settingsKey = settingsKey;
+            this.encryptedKgkBlock = encryptedKgkBlock;
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.database.write(this.settingsKey, this.settings, this.deletedDomains,
+                        this.complete);
+            } catch (IOException writingError) {
+                Log.d("Settings saving error", "Could not write the settings.");
+                writingError.printStackTrace();
+                return;
+            } finally {
+                Clearer.zero(this.settingsKey);
             }
+            if (!this.complete) {
+                return;
+            }
+            SharedPreferences.Editor savedDomainsEditor = this.savedDomains.edit();
+            savedDomainsEditor.remove("encryptedSettings");
+            savedDomainsEditor.putInt("settingsFormat", SETTINGS_FORMAT_DATABASE);
+            savedDomainsEditor.putString("KGK",
+                    Base64.encodeToString(
+                            this.encryptedKgkBlock,
+                            Base64.DEFAULT));
+            // The blob is removed in the same commit which switches to the database, so the
+            // preferences never point at settings which are gone.
+            if (!savedDomainsEditor.commit()) {
+                Log.d("Settings saving error", "Could not switch to the settings database.");
+            }
+        }
+    }
+
+    /**
+     * The format of the stored settings and the encrypted blob of the formats before the
+     * settings database.
+     */
+    static class PrefetchedSettings {
+        private final int format;
+        private final byte[] encryptedBlob;
+
+        PrefetchedSettings(int format, byte[] encryptedBlob) {
+            this.format = format;
+            this.encryptedBlob = encryptedBlob;
+        }
+    }
+
+    /**
+     * The settings which decodeLocalSettings read from the storage.
+     */
+    static class LoadedSettings {
+        private final LocalSettingsDecoder decoder;
+        private final boolean needsMigration;
+        private final byte[] storedSalt2;
+
+        LoadedSettings(LocalSettingsDecoder decoder, boolean needsMigration,
+                       byte[] storedSalt2) {
+            this.decoder = decoder;
+            this.needsMigration = needsMigration;
+            this.storedSalt2 = storedSalt2;
+        }
+
+        int size() {
+            return this.decoder.getSettings().size();
+        }
+    }
+
+    public PasswordSetting getSetting(String domain) {
+        PasswordSetting setting = this.settings.get(domain);
+        if (setting != null) {
+            return setting;
         }
         PasswordSetting newSetting = new PasswordSetting(domain);
-        this.settings.add(newSetting);
+        this.setSetting(newSetting);
         return newSetting;
     }
 
+    public boolean hasSetting(String domain) {
+        return this.settings.containsKey(domain);
+    }
+
     public void setSetting(PasswordSetting changed) {
-        for (PasswordSetting setting : this.settings) {
-            if (setting.getDomain().contentEquals(changed.getDomain())) {
-                this.settings.remove(setting);
-                break;
-            }
-        }
-        this.settings.add(changed);
+        this.putSetting(changed);
+        this.markChanged(changed.getDomain());
+    }
+
+    private void putSetting(PasswordSetting setting) {
+        this.settings.put(setting.getDomain(), setting);
+        this.index(setting);
+        this.revision++;
     }
 
     public void deleteSetting(String domain) {
-        for (PasswordSetting setting : this.settings) {
-            if (setting.getDomain().contentEquals(domain)) {
-                this.settings.remove(setting);
-            }
+        if (this.settings.remove(domain) != null) {
+            this.unindex(domain);
+            this.revision++;
         }
+        this.changedDomains.remove(domain);
+        this.deletedDomains.add(domain);
+    }
+
+    /**
+     * Remembers that the record of the domain has to be written with the next store.
+     */
+    private void markChanged(String domain) {
+        this.deletedDomains.remove(domain);
+        this.changedDomains.add(domain);
     }
 
     public String[] getDomainList() {
-        String[] domainList = new String[this.settings.size()];
-        int i = 0;
-        for (PasswordSetting setting : this.settings) {
-            domainList[i] = setting.getDomain();
-            i++;
-        }
-        return domainList;
+        return this.settings.keySet().toArray(new String[this.settings.size()]);
     }
 
-    private JSONObject getSettingsAsJSON() {
-        JSONObject settings = new JSONObject();
-        try {
-            for (PasswordSetting setting : this.settings) {
-                settings.put(setting.getDomain(), setting.toJSON());
+    /**
+     * Returns the settings whose url has the same host as the given url. The host is
+     * compared like DomainExtractor extracts it, so "https://www.example.com/login" finds a
+     * setting with the url "example.com".
+     */
+    public List<PasswordSetting> findSettingsByUrl(String url) {
+        return this.lookup(this.domainsByHost, hostOf(url), true);
+    }
+
+    public List<PasswordSetting> findSettingsByUsername(String username) {
+        return this.lookup(this.domainsByUsername, username, false);
+    }
+
+    private List<PasswordSetting> lookup(Map<String, Set<String>> index, String key,
+                                         boolean byHost) {
+        List<PasswordSetting> found = new ArrayList<>();
+        Set<String> domains = index.get(key);
+        if (domains == null) {
+            return found;
+        }
+        for (String domain : domains) {
+            PasswordSetting setting = this.settings.get(domain);
+            // Settings which were changed in place after indexing are skipped.
+            String current = byHost ? hostOf(setting.getUrl()) : setting.getUsername();
+            if (current.equals(key)) {
+                found.add(setting);
             }
-        } catch (JSONException jsonError) {
-            Log.d("Settings packing error", "Could not create json.");
-            jsonError.printStackTrace();
         }
-        return settings;
+        return found;
+    }
+
+    private static String hostOf(String url) {
+        if (url.length() <= 0) {
+            return "";
+        }
+        return DomainExtractor.extract(url).toLowerCase(Locale.ENGLISH);
     }
 
-    private JSONArray getSyncedSettings() {
-        JSONArray syncedSettings = new JSONArray();
-        for (PasswordSetting setting : this.settings) {
-            if (setting.isSynced()) {
-                syncedSettings.put(setting.getDomain());
+    private void index(PasswordSetting setting) {
+        String domain = setting.getDomain();
+        this.unindex(domain);
+        String host = hostOf(setting.getUrl());
+        if (host.length() > 0) {
+            addToIndex(this.domainsByHost, host, domain);
+            this.indexedHosts.put(domain, host);
+        }
+        String username = setting.getUsername();
+        if (username.length() > 0) {
+            addToIndex(this.domainsByUsername, username, domain);
+            this.indexedUsernames.put(domain, username);
+        }
+    }
+
+    private void unindex(String domain) {
+        removeFromIndex(this.domainsByHost, this.indexedHosts.remove(domain), domain);
+        removeFromIndex(this.domainsByUsername, this.indexedUsernames.remove(domain), domain);
+    }
+
+    private static void addToIndex(Map<String, Set<String>> index, String key, String domain) {
+        Set<String> domains = index.get(key);
+        if (domains == null) {
+            domains = new HashSet<>();
+            index.put(key, domains);
+        }
+        domains.add(domain);
+    }
+
+    private static void removeFromIndex(Map<String, Set<String>> index, String key,
+                                        String domain) {
+        if (key == null) {
+            return;
+        }
+        Set<String> domains = index.get(key);
+        if (domains != null) {
+            domains.remove(domain);
+            if (domains.isEmpty()) {
+                index.remove(key);
             }
         }
-        return syncedSettings;
     }
 
+    /**
+     * Returns a number which changes whenever the settings in the export data change. The
+     * synced state is not part of the export so it does not change the revision.
+     */
+    long getRevision() {
+        return this.revision;
+    }
+
+    /**
+     * Creates the blob for the sync server. The settings are encrypted directly behind the
+     * header in the same buffer. The blob is kept and returned again as long as neither the
+     * settings nor the KGK change, so repeated syncs without changes do not encrypt anything.
+     *
+     * @return the blob or null if the settings could not be encoded
+     */
     public byte[] getExportData(KgkManager kgkManager) {
+        if (this.exportData != null && this.exportRevision == this.revision &&
+                this.exportKgkManager == kgkManager &&
+                this.exportKgkGeneration == kgkManager.getKgkGeneration()) {
+            return this.exportData.clone();
+        }
+        byte[] created = this.createExportData(kgkManager);
+        if (created == null) {
+            return null;
+        }
+        this.exportData = created;
+        this.exportRevision = this.revision;
+        this.exportKgkManager = kgkManager;
+        this.exportKgkGeneration = kgkManager.getKgkGeneration();
+        return created.clone();
+    }
+
+    private byte[] createExportData(KgkManager kgkManager) {
+        // Only iv2 is rotated so the cached settings key can be used.
         kgkManager.freshIv2();
-        kgkManager.freshSalt2();
         byte[] kgkBlock = kgkManager.getEncryptedKgk();
         Crypter settingsCrypter = this.getSettingsCrypter(kgkManager);
-        byte[] encryptedSettings = settingsCrypter.encrypt(
-                Packer.compress(
-                        this.getSettingsAsJSON().toString()
-                )
-        );
         byte[] salt = kgkManager.getKgkCrypterSalt();
-        byte[] exportData = new byte[1 + salt.length + kgkBlock.length + encryptedSettings.length];
-        exportData[0] = 0x01;
-        System.arraycopy(salt, 0, exportData, 1, salt.length);
-        System.arraycopy(kgkBlock, 0, exportData, 1 + salt.length, kgkBlock.length);
-        System.arraycopy(encryptedSettings, 0,
-                exportData, 1 + salt.length + kgkBlock.length, encryptedSettings.length);
-        return exportData;
+        ByteArrayOutputStream exportData = new ByteArrayOutputStream();
+        exportData.write(0x01);
+        exportData.write(salt, 0, salt.length);
+        exportData.write(kgkBlock, 0, kgkBlock.length);
+        try {
+            new SettingsEncoder(this.settings.values(), false).encrypt(
+                    settingsCrypter, exportData);
+        } catch (IOException encodingError) {
+            Log.d("Settings packing error", "Could not encode the settings for export.");
+            encodingError.printStackTrace();
+            return null;
+        }
+        return exportData.toByteArray();
     }
 
     public boolean updateFromExportData(KgkManager kgkManager, byte[] blob) {
@@ -228,89 +593,115 @@ public class PasswordSettingsManager {
             Log.d("Version error", "Wrong data format. Could not import anything.");
             return true;
         }
+        SettingsMerger.Result result = this.mergeExportData(kgkManager, blob);
+        return result != null && result.requiresRemoteUpdate();
+    }
+
+    /**
+     * Merges the settings of an export blob into the local settings and stores them.
+     *
+     * @param kgkManager a KgkManager with the KGK of the blob
+     * @param blob export data in the format 0x01
+     * @return the result of the merge or null if the blob could not be read
+     */
+    public SettingsMerger.Result mergeExportData(KgkManager kgkManager, byte[] blob) {
+        if (!(blob[0] == 0x01)) {
+            Log.d("Version error", "Wrong data format. Could not import anything.");
+            return null;
+        }
         byte[] encryptedSettings = Arrays.copyOfRange(blob, 145, blob.length);
         Crypter settingsCrypter = this.getSettingsCrypter(kgkManager);
         byte[] decryptedSettings = settingsCrypter.decrypt(encryptedSettings);
         if (decryptedSettings.length <= 0) {
             Toast.makeText(contentContext, R.string.sync_wrong_password,
                     Toast.LENGTH_SHORT).show();
-            return false;
+            return null;
         }
         String jsonString = Packer.decompress(decryptedSettings);
+        List<String> unsyncedDomains = new ArrayList<>();
+        for (PasswordSetting setting : this.settings.values()) {
+            if (!setting.isSynced()) {
+                unsyncedDomains.add(setting.getDomain());
+            }
+        }
         try {
-            JSONObject loadedSettings = new JSONObject(jsonString);
-            boolean updateRemote = false;
-            Iterator<String> loadedSettingsIterator = loadedSettings.keys();
-            while (loadedSettingsIterator.hasNext()) {
-                JSONObject loadedSetting = loadedSettings.getJSONObject(
-                        loadedSettingsIterator.next());
-                boolean found = false;
-                for (String domain : this.getDomainList()) {
-                    PasswordSetting setting = this.getSetting(domain);
-                    if (setting.getDomain().equals(loadedSetting.getString("domain"))) {
-                        found = true;
-                        DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss",
-                                Locale.ENGLISH);
-                        Date modifiedRemote = df.parse(loadedSetting.getString("mDate"));
-                        if (modifiedRemote.after(setting.getMDate())) {
-                            setting.loadFromJSON(loadedSetting);
-                            this.setSetting(setting);
-                        } else {
-                            updateRemote = true;
-                        }
-                        setting.setSynced(true);
-                        break;
-                    }
-                }
-                if (!found) {
-                    PasswordSetting newSetting = new PasswordSetting(
-                            loadedSetting.getString("domain"));
-                    newSetting.loadFromJSON(loadedSetting);
-                    newSetting.setSynced(true);
-                    this.setSetting(newSetting);
-                }
+            SettingsMerger.Result result = SettingsMerger.merge(this.settings,
+                    new JSONObject(jsonString));
+            for (String domain : result.getAdded()) {
+                this.index(this.settings.get(domain));
+                this.markChanged(domain);
             }
-            for (String domain : this.getDomainList()) {
-                PasswordSetting setting = this.getSetting(domain);
-                boolean found = false;
-                Iterator<String> loadedSettingsIterator2 = loadedSettings.keys();
-                while (loadedSettingsIterator2.hasNext()) {
-                    JSONObject loadedSetting = loadedSettings.getJSONObject(
-                            loadedSettingsIterator2.next());
-                    if (setting.getDomain().equals(loadedSetting.getString("domain"))) {
-                        found = true;
-                        break;
-                    }
-                }
-                if (!found && setting.isSynced()) {
-                    updateRemote = true;
+            for (String domain : result.getUpdatedLocally()) {
+                this.index(this.settings.get(domain));
+                this.markChanged(domain);
+            }
+            if (result.getAdded().size() > 0 || result.getUpdatedLocally().size() > 0) {
+                this.revision++;
+            }
+            for (String domain : unsyncedDomains) {
+                if (this.settings.get(domain).isSynced()) {
+                    this.markChanged(domain);
                 }
             }
-            this.storeLocalSettings(kgkManager);
-            return updateRemote;
+            this.requestStoreLocalSettings(kgkManager);
+            return result;
         } catch (JSONException e) {
             Log.d("Update settings error", "Unable to read JSON data.");
             e.printStackTrace();
-            return false;
+            return null;
         } catch (ParseException e) {
             Log.d("Update settings error", "Unable to parse the date.");
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
     public void setAllSettingsToSynced() {
-        for (PasswordSetting setting : this.settings) {
-            setting.setSynced(true);
+        for (PasswordSetting setting : this.settings.values()) {
+            if (!setting.isSynced()) {
+                setting.setSynced(true);
+                this.markChanged(setting.getDomain());
+            }
+        }
+    }
+
+    /**
+     * Clears the loaded settings without touching the stored ones. Pending changes are
+     * dropped, so write them first and call this in afterLocalSettingsWritten. This is
+     * called when the settings get locked.
+     */
+    void clearLoadedSettings() {
+        this.persistenceScheduler.discard();
+        for (PasswordSetting setting : this.settings.values()) {
+            setting.clear();
         }
+        this.settings.clear();
+        this.domainsByHost.clear();
+        this.domainsByUsername.clear();
+        this.indexedHosts.clear();
+        this.indexedUsernames.clear();
+        this.changedDomains.clear();
+        this.deletedDomains.clear();
+        this.storedSalt2 = null;
+        Clearer.zero(this.exportData);
+        this.exportData = null;
+        this.exportKgkManager = null;
     }
 
     public void deleteAllSettings() {
+        this.persistenceScheduler.discard();
+        this.database.clear();
+        this.changedDomains.clear();
+        this.deletedDomains.clear();
+        this.storedSalt2 = null;
+        this.exportData = null;
+        this.exportKgkManager = null;
         SharedPreferences.Editor savedDomainsEditor = savedDomains.edit();
         savedDomainsEditor.putString("encryptedSettings",
                 Base64.encodeToString(
                         new byte[] {},
                         Base64.DEFAULT));
+        savedDomainsEditor.remove("settingsFormat");
         savedDomainsEditor.apply();
     }
 }
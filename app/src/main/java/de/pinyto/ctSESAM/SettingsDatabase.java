@@ -0,0 +1,304 @@
+package de.pinyto.ctSESAM;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.zip.ZipException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stores every setting in its own row of a SQLite database. The rows are found by a keyed
+ * hash of the domain, an HMAC-SHA256 under a key which is derived from the settings key, so
+ * the primary key index does not reveal the domains. Saving a setting replaces its row and
+ * deleting a setting deletes its row. All changes of a write are one transaction.
+ *
+ * The payload of a row is the packed local settings structure with one setting. It starts
+ * with ROW_VERSION and its own IV and is encrypted with the settings key. The meta table
+ * contains a check value of the key so a write with another key does not mix the rows.
+ *
+ * The index on the keyed hash only serves to replace and delete single rows. The list, its
+ * filter and the lookups by domain work on the settings which the PasswordSettingsManager
+ * loads at unlock: the filter matches parts of the domains, which a keyed hash can not
+ * answer, and the list needs every domain name anyway.
+ *
+ * write is called on the writer thread of the SettingsPersistenceScheduler, so all methods
+ * which touch the database are synchronized.
+ */
+class SettingsDatabase extends SQLiteOpenHelper {
+    static final String DATABASE_NAME = "settings.db";
+    static final byte ROW_VERSION = 0x01;
+    private static final int DATABASE_VERSION = 1;
+    private static final String SETTINGS_TABLE = "settings";
+    private static final String META_TABLE = "meta";
+    private static final String COLUMN_DOMAIN_HASH = "domain_hash";
+    private static final String COLUMN_PAYLOAD = "payload";
+    private static final String COLUMN_NAME = "name";
+    private static final String COLUMN_VALUE = "value";
+    private static final String KEY_CHECK = "keyCheck";
+    private final Context context;
+
+    SettingsDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + SETTINGS_TABLE + " (" +
+                COLUMN_DOMAIN_HASH + " TEXT PRIMARY KEY, " +
+                COLUMN_PAYLOAD + " BLOB NOT NULL)");
+        db.execSQL("CREATE TABLE " + META_TABLE + " (" +
+                COLUMN_NAME + " TEXT PRIMARY KEY, " +
+                COLUMN_VALUE + " TEXT NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        switch (oldVersion) {
+            // Every change of the schema increases DATABASE_VERSION and adds a case here
+            // which migrates the rows in place. The cases fall through so an old database
+            // passes all later steps. The rows can not be rebuilt without the settings key,
+            // so dropping the tables would lose the settings.
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Decrypts all stored settings into the decoder.
+     *
+     * @param settingsKey the key for the settings; it is not changed
+     * @param decoder receives the settings and the synced domains
+     */
+    public synchronized void load(byte[] settingsKey, LocalSettingsDecoder decoder)
+            throws WrongPasswordException {
+        if (!this.exists()) {
+            return;
+        }
+        Cursor cursor;
+        try {
+            SQLiteDatabase db = this.getReadableDatabase();
+            String keyCheck = readKeyCheck(db);
+            if (keyCheck == null) {
+                return;
+            }
+            if (!keyCheck.equals(new KeyedHash(settingsKey).keyCheck())) {
+                throw new WrongPasswordException("The settings have another key.");
+            }
+            cursor = db.query(SETTINGS_TABLE, new String[] {COLUMN_PAYLOAD},
+                    null, null, null, null, null);
+        } catch (SQLiteException e) {
+            Log.d("Settings loading error", "Unable to read the settings database.");
+            e.printStackTrace();
+            return;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                decodeRow(settingsKey, cursor.getBlob(0), decoder);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Replaces the rows of the changed settings and deletes the rows of the deleted domains
+     * in one transaction. A complete write deletes all other rows and stores the check value
+     * of the key.
+     *
+     * @param settingsKey the key for the settings; it is not changed
+     * @param changed the settings which have to be written
+     * @param deleted the domains which have to be removed
+     * @param complete true if changed contains all settings. The key may differ from the one
+     *                 of the stored settings then.
+     */
+    public synchronized void write(byte[] settingsKey, Collection<PasswordSetting> changed,
+                                   Collection<String> deleted, boolean complete)
+            throws IOException {
+        KeyedHash keyedHash = new KeyedHash(settingsKey);
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                String keyCheck = readKeyCheck(db);
+                if (complete || keyCheck == null) {
+                    db.delete(SETTINGS_TABLE, null, null);
+                    ContentValues check = new ContentValues();
+                    check.put(COLUMN_NAME, KEY_CHECK);
+                    check.put(COLUMN_VALUE, keyedHash.keyCheck());
+                    db.insertWithOnConflict(META_TABLE, null, check,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                } else if (!keyCheck.equals(keyedHash.keyCheck())) {
+                    throw new IOException("The stored settings have another key.");
+                }
+                for (PasswordSetting setting : changed) {
+                    ContentValues row = new ContentValues();
+                    row.put(COLUMN_DOMAIN_HASH, keyedHash.hash(setting.getDomain()));
+                    row.put(COLUMN_PAYLOAD, encodeRow(settingsKey, setting));
+                    db.insertWithOnConflict(SETTINGS_TABLE, null, row,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                for (String domain : deleted) {
+                    db.delete(SETTINGS_TABLE, COLUMN_DOMAIN_HASH + " = ?",
+                            new String[] {keyedHash.hash(domain)});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            throw new IOException("Unable to write the settings database: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes all stored settings.
+     */
+    public synchronized void clear() {
+        if (!this.exists()) {
+            return;
+        }
+        try {
+            SQLiteDatabase db = this.getWritableDatabase();
+            db.delete(SETTINGS_TABLE, null, null);
+            db.delete(META_TABLE, null, null);
+        } catch (SQLiteException e) {
+            Log.d("Settings deleting error", "Unable to clear the settings database.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens the database if it exists so a following load does not wait for it.
+     */
+    synchronized void open() {
+        if (!this.exists()) {
+            return;
+        }
+        try {
+            this.getReadableDatabase();
+        } catch (SQLiteException e) {
+            Log.d("Settings loading error", "Unable to open the settings database.");
+            e.printStackTrace();
+        }
+    }
+
+    private boolean exists() {
+        return this.context.getDatabasePath(DATABASE_NAME).exists();
+    }
+
+    private static String readKeyCheck(SQLiteDatabase db) {
+        Cursor cursor = db.query(META_TABLE, new String[] {COLUMN_VALUE},
+                COLUMN_NAME + " = ?", new String[] {KEY_CHECK}, null, null, null);
+        try {
+            return cursor.moveToNext() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static byte[] encodeRow(byte[] settingsKey, PasswordSetting setting)
+            throws IOException {
+        byte[] iv = Crypter.createIv();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        payload.write(ROW_VERSION);
+        payload.write(iv, 0, iv.length);
+        Crypter crypter = createCrypter(settingsKey, iv);
+        try {
+            new SettingsEncoder(Collections.singletonList(setting), true).encrypt(
+                    crypter, payload);
+        } finally {
+            crypter.clear();
+        }
+        return payload.toByteArray();
+    }
+
+    private static void decodeRow(byte[] settingsKey, byte[] payload,
+                                  LocalSettingsDecoder decoder)
+            throws WrongPasswordException {
+        if (payload == null || payload.length < 1 + 16 + 16 || payload[0] != ROW_VERSION) {
+            throw new WrongPasswordException("Unknown row format.");
+        }
+        Crypter crypter = createCrypter(settingsKey, Arrays.copyOfRange(payload, 1, 17));
+        byte[] packed = crypter.decrypt(Arrays.copyOfRange(payload, 17, payload.length));
+        crypter.clear();
+        Reader reader = Packer.decompressToReader(packed);
+        if (reader == null) {
+            throw new WrongPasswordException("unable to decompress");
+        }
+        try {
+            decoder.decode(reader);
+        } catch (ZipException zipError) {
+            throw new WrongPasswordException("unable to decompress");
+        } catch (IOException jsonError) {
+            Log.d("Settings loading error", "A row is not in JSON format.");
+            jsonError.printStackTrace();
+        } catch (IllegalStateException jsonError) {
+            Log.d("Settings loading error", "A row is not in JSON format.");
+            jsonError.printStackTrace();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static Crypter createCrypter(byte[] settingsKey, byte[] iv) {
+        byte[] keyIv = Arrays.copyOf(settingsKey, 48);
+        System.arraycopy(iv, 0, keyIv, 32, 16);
+        return new Crypter(keyIv);
+    }
+
+    /**
+     * Hashes the domains with a key which is derived from the settings key.
+     */
+    private static class KeyedHash {
+        private final Mac mac;
+        private final String keyCheck;
+
+        KeyedHash(byte[] settingsKey) {
+            try {
+                Mac derivation = Mac.getInstance("HmacSHA256");
+                derivation.init(new SecretKeySpec(settingsKey, "HmacSHA256"));
+                this.keyCheck = Hextools.bytesToHex(
+                        derivation.doFinal(UTF8.encode("key check")));
+                byte[] hashKey = derivation.doFinal(UTF8.encode("domain hash"));
+                this.mac = Mac.getInstance("HmacSHA256");
+                this.mac.init(new SecretKeySpec(hashKey, "HmacSHA256"));
+                Clearer.zero(hashKey);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            } catch (InvalidKeyException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        String hash(String domain) {
+            return Hextools.bytesToHex(this.mac.doFinal(UTF8.encode(domain)));
+        }
+
+        /**
+         * Returns a value which only matches for the same key. It does not reveal the key.
+         */
+        String keyCheck() {
+            return this.keyCheck;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.pinyto.ctSESAM;
+
+import android.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Collection;
+
+/**
+ * Encodes the settings as JSON and streams them through the compression of Packer into the
+ * cipher of a Crypter. Every setting writes its fields directly to the stream so neither a
+ * JSONObject tree nor the whole JSON String nor the uncompressed bytes are created. The
+ * result can be read with Packer.decompressToReader and LocalSettingsDecoder.
+ *
+ * Packer writes the uncompressed length before the data. The JSON is written in one pass:
+ * the compressing stream counts the bytes and keeps the compressed data until the length is
+ * known.
+ */
+class SettingsEncoder {
+    private final Collection<PasswordSetting> settings;
+    private final boolean withSyncedDomains;
+
+    /**
+     * @param settings the settings to encode; they must not change while encoding
+     * @param withSyncedDomains true for the local structure {"settings": {...}, "synced": [...]},
+     *                          false for the settings object of the export data
+     */
+    SettingsEncoder(Collection<PasswordSetting> settings, boolean withSyncedDomains) {
+        this.settings = settings;
+        this.withSyncedDomains = withSyncedDomains;
+    }
+
+    /**
+     * Writes the JSON to out. The writer is flushed but not closed.
+     */
+    void encode(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        if (this.withSyncedDomains) {
+            writer.beginObject();
+            writer.name("settings");
+        }
+        writer.beginObject();
+        for (PasswordSetting setting : this.settings) {
+            writer.name(setting.getDomain());
+            setting.writeJSON(writer);
+        }
+        writer.endObject();
+        if (this.withSyncedDomains) {
+            writer.name("synced");
+            writer.beginArray();
+            for (PasswordSetting setting : this.settings) {
+                if (setting.isSynced()) {
+                    writer.value(setting.getDomain());
+                }
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Compresses and encrypts the JSON into out. The bytes are the same as with
+     * crypter.encrypt(Packer.compress(json)) for the JSON which encode writes. The settings
+     * are semantically equal to the JSON of toJSON, but the bytes differ from it because
+     * org.json escapes "/". out is closed afterwards.
+     *
+     * @param crypter the settings crypter
+     * @param out receives the encrypted settings
+     */
+    void encrypt(Crypter crypter, OutputStream out) throws IOException {
+        OutputStream encryptingStream = crypter.encryptingStream(out);
+        if (encryptingStream == null) {
+            throw new IOException("Unable to encrypt the settings.");
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                Packer.compressingStream(encryptingStream), "UTF-8"));
+        try {
+            this.encode(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.pinyto.ctSESAM;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Merges the settings of a sync server into the local settings. Local and remote settings
+ * are joined by their domain in one pass over the remote settings and one pass over the
+ * local settings. The modification date of every remote setting is parsed once.
+ */
+public class SettingsMerger {
+
+    /**
+     * Lists the domains which were touched by a merge.
+     */
+    public static class Result {
+        private final List<String> added = new ArrayList<>();
+        private final List<String> updatedLocally = new ArrayList<>();
+        private final List<String> needsRemoteUpdate = new ArrayList<>();
+        private final List<String> deletedRemotely = new ArrayList<>();
+
+        /**
+         * Domains which only existed remotely and were added locally.
+         */
+        public List<String> getAdded() {
+            return this.added;
+        }
+
+        /**
+         * Domains whose remote version was newer and replaced the local one.
+         */
+        public List<String> getUpdatedLocally() {
+            return this.updatedLocally;
+        }
+
+        /**
+         * Domains which exist on both sides where the remote version is not newer.
+         */
+        public List<String> getNeedsRemoteUpdate() {
+            return this.needsRemoteUpdate;
+        }
+
+        /**
+         * Domains which were synced before but are missing remotely. They are kept locally
+         * and sent to the server again with the next update.
+         */
+        public List<String> getDeletedRemotely() {
+            return this.deletedRemotely;
+        }
+
+        public boolean requiresRemoteUpdate() {
+            return this.needsRemoteUpdate.size() > 0 || this.deletedRemotely.size() > 0;
+        }
+    }
+
+    /**
+     * Merges the remote settings into the map of local settings. Settings which are newer
+     * remotely are loaded into the local object and remote-only settings are added to the map.
+     * Every setting which exists remotely is marked as synced afterwards.
+     *
+     * @param localSettings the local settings by domain; this map is changed
+     * @param remoteSettings the decrypted settings object of the remote blob
+     * @return the domains in the categories of the merge
+     */
+    public static Result merge(Map<String, PasswordSetting> localSettings,
+                               JSONObject remoteSettings)
+            throws JSONException, ParseException {
+        Result result = new Result();
+        Set<String> remoteDomains = new HashSet<>();
+        Iterator<String> keys = remoteSettings.keys();
+        while (keys.hasNext()) {
+            JSONObject remoteSetting = remoteSettings.getJSONObject(keys.next());
+            String domain = remoteSetting.getString("domain");
+            remoteDomains.add(domain);
+            PasswordSetting setting = localSettings.get(domain);
+            if (setting == null) {
+                setting = new PasswordSetting(domain);
+                setting.loadFromJSON(remoteSetting);
+                localSettings.put(setting.getDomain(), setting);
+                result.added.add(setting.getDomain());
+            } else {
+                Date modifiedRemote = PasswordSetting.parseDate(remoteSetting.getString("mDate"));
+                if (modifiedRemote.after(setting.getMDate())) {
+                    setting.loadFromJSON(remoteSetting);
+                    result.updatedLocally.add(domain);
+                } else {
+                    result.needsRemoteUpdate.add(domain);
+                }
+            }
+            setting.setSynced(true);
+        }
+        for (PasswordSetting setting : localSettings.values()) {
+            if (setting.isSynced() && !remoteDomains.contains(setting.getDomain())) {
+                result.deletedRemotely.add(setting.getDomain());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,152 @@
+package de.pinyto.ctSESAM;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes the local settings of a PasswordSettingsManager in the background. A request only
+ * marks the settings as changed. All requests which arrive within COALESCE_DELAY_MILLIS after
+ * the first one are written together. writePending starts pending changes at once without
+ * waiting for them. flush also waits until every write has finished, which blocks the main
+ * thread, so it is only meant for the paths where the process may end afterwards.
+ *
+ * The data for a write is copied on the main thread. Only the key derivation, encoding,
+ * compression and encryption run on the writer thread. Writes of all schedulers share one
+ * thread so they reach the SharedPreferences in the order of the requests.
+ * All methods must be called on the main thread.
+ */
+class SettingsPersistenceScheduler {
+    static final long COALESCE_DELAY_MILLIS = 500;
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final WritePreparer writePreparer;
+    private KgkManager pendingKgkManager;
+    private boolean dirty = false;
+    private Future<?> lastWrite;
+    private final Runnable writeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startWrite();
+        }
+    };
+
+    /**
+     * Copies everything a write needs. It is called on the main thread.
+     */
+    interface WritePreparer {
+        /**
+         * @param kgkManager the KgkManager of the latest request
+         * @return the write which may run on any thread or null if there is nothing to write
+         */
+        Runnable prepareWrite(KgkManager kgkManager);
+    }
+
+    SettingsPersistenceScheduler(WritePreparer writePreparer) {
+        this.writePreparer = writePreparer;
+    }
+
+    /**
+     * Marks the settings as changed. They are written after COALESCE_DELAY_MILLIS together
+     * with all requests which follow in the meantime.
+     */
+    public void request(KgkManager kgkManager) {
+        if (!this.dirty) {
+            this.dirty = true;
+            this.handler.postDelayed(this.writeRunnable, COALESCE_DELAY_MILLIS);
+        }
+        this.pendingKgkManager = kgkManager;
+    }
+
+    public boolean isDirty() {
+        return this.dirty;
+    }
+
+    /**
+     * Starts the pending write without waiting for the delay. It does not wait for the write.
+     */
+    public void writePending() {
+        if (this.dirty) {
+            this.handler.removeCallbacks(this.writeRunnable);
+            this.startWrite();
+        }
+    }
+
+    /**
+     * Starts the pending write without waiting for the delay and blocks until all writes
+     * have finished.
+     */
+    public void flush() {
+        this.writePending();
+        this.waitForLastWrite();
+    }
+
+    /**
+     * Runs the action on the main thread after all writes which were started so far have
+     * finished.
+     */
+    public void afterWrites(final Runnable action) {
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                handler.post(action);
+            }
+        });
+    }
+
+    /**
+     * Blocks until all writes which were started so far have finished. This must not be
+     * called on the main thread.
+     */
+    static void waitForWrites() {
+        try {
+            writer.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drops the pending write and waits until the running writes have finished. Use this
+     * before the stored settings get deleted.
+     */
+    public void discard() {
+        this.handler.removeCallbacks(this.writeRunnable);
+        this.dirty = false;
+        this.pendingKgkManager = null;
+        this.waitForLastWrite();
+    }
+
+    private void waitForLastWrite() {
+        if (this.lastWrite != null) {
+            try {
+                this.lastWrite.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+            }
+            this.lastWrite = null;
+        }
+    }
+
+    private void startWrite() {
+        KgkManager kgkManager = this.pendingKgkManager;
+        this.dirty = false;
+        this.pendingKgkManager = null;
+        Runnable write = this.writePreparer.prepareWrite(kgkManager);
+        if (write != null) {
+            this.lastWrite = writer.submit(write);
+        }
+    }
+}
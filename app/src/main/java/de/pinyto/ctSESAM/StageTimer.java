@@ -0,0 +1,51 @@
+package de.pinyto.ctSESAM;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Measures how long the consecutive stages of a task take, e.g. the stages of unlocking the
+ * settings.
+ */
+class StageTimer {
+    private final Map<String, Long> durations = new LinkedHashMap<>();
+    private String stage;
+    private long stageStart;
+
+    /**
+     * Ends the running stage and starts the next one.
+     */
+    void start(String stage) {
+        this.stop();
+        this.stage = stage;
+        this.stageStart = System.nanoTime();
+    }
+
+    void stop() {
+        if (this.stage == null) {
+            return;
+        }
+        this.durations.put(this.stage, (System.nanoTime() - this.stageStart) / 1000000);
+        this.stage = null;
+    }
+
+    /**
+     * @return the durations of the finished stages in milliseconds in the order of the stages
+     */
+    Map<String, Long> getDurations() {
+        return this.durations;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (Map.Entry<String, Long> duration : this.durations.entrySet()) {
+            if (result.length() > 0) {
+                result.append(", ");
+            }
+            result.append(duration.getKey()).append(": ").append(duration.getValue())
+                    .append(" ms");
+        }
+        return result.toString();
+    }
+}
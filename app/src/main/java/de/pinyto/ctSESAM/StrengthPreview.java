@@ -0,0 +1,140 @@
+package de.pinyto.ctSESAM;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Holds the passwords for every tile of the SmartSelector. They are all calculated from the
+ * hash of one PasswordGenerator when the preview is created so selecting a tile only has to
+ * look up the password.
+ */
+class StrengthPreview {
+    static final int MIN_LENGTH = 4;
+    static final int MAX_LENGTH = 32;
+    static final int COMPLEXITY_COUNT = 7;
+    private final PasswordGenerator generator;
+    private byte[] salt;
+    private final CharacterSet extraCharacterSet;
+    private final PasswordSetting[] cells;
+    private final char[][] passwords;
+    private final int[] lengths;
+
+    /**
+     * Calculates the passwords for all tiles.
+     *
+     * @param generator a PasswordGenerator which was created for the setting
+     * @param setting the setting which is shown in the SmartSelector
+     */
+    StrengthPreview(PasswordGenerator generator, PasswordSetting setting) {
+        this.generator = generator;
+        this.salt = setting.getSalt().clone();
+        this.extraCharacterSet = setting.getExtraCharacterSet();
+        int cellCount = (MAX_LENGTH - MIN_LENGTH + 1) * COMPLEXITY_COUNT;
+        this.cells = new PasswordSetting[cellCount];
+        this.passwords = new char[cellCount][];
+        this.lengths = new int[cellCount];
+        for (int length = MIN_LENGTH; length <= MAX_LENGTH; length++) {
+            for (int complexity = 0; complexity < COMPLEXITY_COUNT; complexity++) {
+                int cell = getCellIndex(length, complexity);
+                try {
+                    this.cells[cell] = (PasswordSetting) setting.clone();
+                } catch (CloneNotSupportedException e) {
+                    e.printStackTrace();
+                }
+                this.cells[cell].setTemplate(createTemplate(length, complexity, this.salt));
+                this.passwords[cell] = new char[length];
+            }
+        }
+        generator.getPasswords(this.cells, this.passwords, this.lengths);
+    }
+
+    /**
+     * Checks if the preview still shows the passwords for this generator and setting. The
+     * passwords depend on the salt (which shuffles the templates) and on the extra characters.
+     */
+    boolean isValidFor(PasswordGenerator generator, PasswordSetting setting) {
+        return this.generator == generator &&
+                this.extraCharacterSet == setting.getExtraCharacterSet() &&
+                Arrays.equals(this.salt, setting.getSalt());
+    }
+
+    static boolean contains(int length, int complexity) {
+        return length >= MIN_LENGTH && length <= MAX_LENGTH &&
+                complexity >= 0 && complexity < COMPLEXITY_COUNT;
+    }
+
+    String getTemplate(int length, int complexity) {
+        return this.cells[getCellIndex(length, complexity)].getTemplate();
+    }
+
+    String getPassword(int length, int complexity) {
+        int cell = getCellIndex(length, complexity);
+        return new String(this.passwords[cell], 0, this.lengths[cell]);
+    }
+
+    /**
+     * Zeroes all passwords of the preview and drops the cloned settings with their usernames
+     * and notes. The clones share the salt with the shown setting, so only the copy of this
+     * preview is zeroed. The preview is not valid for any setting afterwards.
+     */
+    void clear() {
+        for (char[] password : this.passwords) {
+            Clearer.zero(password);
+        }
+        Arrays.fill(this.cells, null);
+        Arrays.fill(this.lengths, 0);
+        Clearer.zero(this.salt);
+        this.salt = null;
+    }
+
+    private static int getCellIndex(int length, int complexity) {
+        if (!contains(length, complexity)) {
+            throw new IllegalArgumentException("There is no tile for length " +
+                    Integer.toString(length) + " and complexity " +
+                    Integer.toString(complexity) + ".");
+        }
+        return (length - MIN_LENGTH) * COMPLEXITY_COUNT + complexity;
+    }
+
+    /**
+     * Creates the template for a tile of the SmartSelector. The salt of the setting is used
+     * to shuffle the template so the same tile always leads to the same template.
+     */
+    static String createTemplate(int length, int complexity, byte[] salt) {
+        StringBuilder template = new StringBuilder();
+        if (complexity % 3 == 0 || complexity >= 5) {
+            template.append("n");
+        }
+        if (complexity == 1 || complexity >= 3) {
+            template.append("a");
+        }
+        if (complexity == 2 || complexity >= 4) {
+            template.append("A");
+        }
+        if (complexity >= 6) {
+            template.append("o");
+        }
+        while (template.length() < length) {
+            template.append("x");
+        }
+        return shuffleString(template.toString(), salt);
+    }
+
+    private static String shuffleString(String string, byte[] salt)
+    {
+        List<String> letters = Arrays.asList(string.split(""));
+        long seed = 0;
+        for (int i=0; i < 48/8; i++) {
+            seed += (long) salt[i] << i*8;
+        }
+        Random rng = new Random(seed);
+        Collections.shuffle(letters, rng);
+        StringBuilder shuffled = new StringBuilder();
+        for (String letter : letters) {
+            shuffled.append(letter);
+        }
+        return shuffled.toString();
+    }
+}
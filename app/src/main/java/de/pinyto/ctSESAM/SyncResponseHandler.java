@@ -70,7 +70,7 @@ class SyncResponseHandler extends Handler {
                         }
                         if (updateRemote) {
                             byte[] encryptedBlob = settingsManager.getExportData(kgkManager);
-                            if (mService != null && mBound) {
+                            if (encryptedBlob != null && mService != null && mBound) {
                                 Message updateMsg = Message.obtain(null, SEND_UPDATE, 0, 0);
                                 updateMsg.replyTo = new Messenger(new SyncResponseHandler(
                                         syncFinishedListener,
@@ -103,6 +103,7 @@ class SyncResponseHandler extends Handler {
                         JSONObject syncDataObject = new JSONObject(updateRequestAnswer);
                         if (syncDataObject.getString("status").equals("ok")) {
                             settingsManager.setAllSettingsToSynced();
+                            settingsManager.requestStoreLocalSettings(kgkManager);
                             syncFinishedListener.onSyncFinished(true);
                         } else {
                             syncFinishedListener.onSyncFinished(false);
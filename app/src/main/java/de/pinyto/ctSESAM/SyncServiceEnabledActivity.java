@@ -20,57 +20,65 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 public abstract class SyncServiceEnabledActivity extends AppCompatActivity
-        implements SyncResponseHandler.OnSyncFinishedListener {
+        implements SyncResponseHandler.OnSyncFinishedListener, UnlockedSession.OnLockListener {
     protected Messenger syncServiceMessenger = null;
     protected boolean syncServiceBound;
     protected KgkManager kgkManager;
     protected PasswordSettingsManager settingsManager;
     protected PasswordGenerator passwordGenerator;
-
+    private UnlockedSession session;
+    private boolean attachedToSession = false;
+
+    /**
+     * Takes the managers from the unlocked session. If the settings are locked the lock
+     * screen is shown and the activity finishes. Subclasses have to check isFinishing()
+     * after calling this.
+     */
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        if (savedInstanceState != null && savedInstanceState.containsKey(UnlockActivity.KEYIVKEY)) {
-            kgkManager = new KgkManager(this,
-                    savedInstanceState.getByteArray(UnlockActivity.KEYIVKEY));
-        }
-        Intent intent = getIntent();
-        if (intent.hasExtra(UnlockActivity.KEYIVKEY)) {
-            kgkManager = new KgkManager(this,
-                    intent.getByteArrayExtra(UnlockActivity.KEYIVKEY));
-        }
-        settingsManager = new PasswordSettingsManager(getBaseContext());
-        try {
-            settingsManager.loadLocalSettings(kgkManager);
-        } catch (WrongPasswordException e) {
-            Log.e("Wrong password?", "This should not happen at this point!");
-            Log.e("WrongPasswordException", e.toString());
-            Intent newIntent = new Intent(this, UnlockActivity.class);
-            startActivity(newIntent);
+        session = UnlockedSession.getCurrent();
+        if (session == null) {
+            showLockScreen();
+            return;
         }
+        kgkManager = session.getKgkManager();
+        settingsManager = session.getSettingsManager();
         setToNotGenerated();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        if (kgkManager == null || !kgkManager.hasKgk() || settingsManager == null) {
-            Intent intent = getIntent();
-            if (intent.hasExtra(UnlockActivity.KEYIVKEY)) {
-                kgkManager = new KgkManager(this,
-                        intent.getByteArrayExtra(UnlockActivity.KEYIVKEY));
-                settingsManager = new PasswordSettingsManager(getBaseContext());
-                try {
-                    settingsManager.loadLocalSettings(kgkManager);
-                } catch (WrongPasswordException e) {
-                    Log.e("Wrong password?", "This should not happen at this point!");
-                    Log.e("WrongPasswordException", e.toString());
-                    Intent newIntent = new Intent(this, UnlockActivity.class);
-                    startActivity(newIntent);
-                }
-                setToNotGenerated();
-            }
+        if (session == null || session.isLocked()) {
+            showLockScreen();
+            return;
         }
+        session.attach(this);
+        attachedToSession = true;
+    }
+
+    /**
+     * Every interaction restarts the idle timer of the session.
+     */
+    @Override
+    public void onUserInteraction() {
+        super.onUserInteraction();
+        if (session != null) {
+            session.touch();
+        }
+    }
+
+    @Override
+    public void onSessionLocked() {
+        showLockScreen();
+    }
+
+    private void showLockScreen() {
+        Intent intent = new Intent(this, UnlockActivity.class);
+        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+        startActivity(intent);
+        finish();
     }
 
     @Override
@@ -88,14 +96,13 @@ public abstract class SyncServiceEnabledActivity extends AppCompatActivity
         invalidateOptionsMenu();
     }
 
-    @Override
-    public void onSaveInstanceState(Bundle savedInstanceState) {
-        savedInstanceState.putByteArray(UnlockActivity.KEYIVKEY, kgkManager.exportKeyIv());
-        super.onSaveInstanceState(savedInstanceState);
-    }
-
     @Override
     public void onPause() {
+        settingsManager.writeLocalSettings();
+        if (attachedToSession) {
+            session.detach(this);
+            attachedToSession = false;
+        }
         unbindService(syncServiceConnection);
         syncServiceBound = false;
         super.onPause();
@@ -103,7 +110,9 @@ public abstract class SyncServiceEnabledActivity extends AppCompatActivity
 
     @Override
     protected void onDestroy() {
-        kgkManager.reset();
+        if (settingsManager != null) {
+            settingsManager.flushLocalSettings();
+        }
         super.onDestroy();
     }
 
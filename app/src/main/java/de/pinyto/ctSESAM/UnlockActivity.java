@@ -10,8 +10,6 @@ import android.view.MenuItem;
 
 public class UnlockActivity extends AppCompatActivity
         implements LockScreenFragment.OnUnlockSuccessfulListener {
-    public static final String KEYIVKEY = "de.pinyto.ctsesam.KEYIV";
-
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -23,6 +21,15 @@ public class UnlockActivity extends AppCompatActivity
         setSupportActionBar(syncToolbar);
     }
 
+    /**
+     * Showing the lock screen locks the settings.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        UnlockedSession.lockCurrent();
+    }
+
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.unlock_actions, menu);
@@ -33,7 +40,6 @@ public class UnlockActivity extends AppCompatActivity
     public void onUnlock(KgkManager kgkManager) {
         Log.d("initial KGK manager", kgkManager.toString());
         Intent intent = new Intent(this, PasswordSettingsListActivity.class);
-        intent.putExtra(KEYIVKEY, kgkManager.exportKeyIv());
         startActivity(intent);
     }
 
@@ -0,0 +1,144 @@
+package de.pinyto.ctSESAM;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Holds the unlocked KgkManager and the loaded PasswordSettingsManager for all activities of
+ * the process. Activities attach to the session instead of decrypting the KGK and loading the
+ * settings again, so switching between them needs no cryptography.
+ *
+ * The session locks itself if the user does not interact for IDLE_TIMEOUT_MILLIS, no matter
+ * whether an activity is in the foreground. Activities call touch on every interaction and
+ * attach in onResume so they are told when the session locks. Locking starts the write of
+ * pending changes, zeroes the KGK and the settings key and clears the loaded settings when
+ * the write has finished. Fragments check isLocked before they use their managers. All
+ * methods must be called on the main thread.
+ */
+class UnlockedSession {
+    static final long IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static UnlockedSession current;
+    private final KgkManager kgkManager;
+    private final PasswordSettingsManager settingsManager;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private OnLockListener lockListener;
+    private boolean locked = false;
+    private final Runnable lockRunnable = new Runnable() {
+        @Override
+        public void run() {
+            lock();
+        }
+    };
+
+    /**
+     * Is told when the session locks, e.g. to show the lock screen.
+     */
+    interface OnLockListener {
+        void onSessionLocked();
+    }
+
+    private UnlockedSession(KgkManager kgkManager, PasswordSettingsManager settingsManager) {
+        this.kgkManager = kgkManager;
+        this.settingsManager = settingsManager;
+    }
+
+    /**
+     * Starts a session with the unlocked managers. A running session is locked first. The
+     * session takes over the managers, so the caller must not reset them.
+     */
+    static UnlockedSession open(KgkManager kgkManager,
+                                PasswordSettingsManager settingsManager) {
+        lockCurrent();
+        current = new UnlockedSession(kgkManager, settingsManager);
+        current.handler.postDelayed(current.lockRunnable, IDLE_TIMEOUT_MILLIS);
+        return current;
+    }
+
+    /**
+     * @return the running session or null if the settings are locked
+     */
+    static UnlockedSession getCurrent() {
+        return current;
+    }
+
+    static void lockCurrent() {
+        if (current != null) {
+            current.lock();
+        }
+    }
+
+    KgkManager getKgkManager() {
+        return this.kgkManager;
+    }
+
+    PasswordSettingsManager getSettingsManager() {
+        return this.settingsManager;
+    }
+
+    boolean isLocked() {
+        return this.locked;
+    }
+
+    /**
+     * @return true if the settings manager does not belong to a running unlocked session
+     */
+    static boolean isLocked(PasswordSettingsManager settingsManager) {
+        return current == null || current.locked || current.settingsManager != settingsManager;
+    }
+
+    /**
+     * Restarts the idle timer. Activities call this on every user interaction.
+     */
+    void touch() {
+        if (this.locked) {
+            return;
+        }
+        this.handler.removeCallbacks(this.lockRunnable);
+        this.handler.postDelayed(this.lockRunnable, IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Registers the activity in the foreground. Its listener is called if the session locks
+     * while it is attached.
+     */
+    void attach(OnLockListener listener) {
+        this.lockListener = listener;
+        this.touch();
+    }
+
+    void detach(OnLockListener listener) {
+        if (this.lockListener == listener) {
+            this.lockListener = null;
+        }
+    }
+
+    /**
+     * Starts the write of pending changes and zeroes the KGK and the settings key. The write
+     * has its own copies of the key and the settings, so it does not block the main thread.
+     * The loaded settings share their salts with these copies and are cleared when the write
+     * has finished. The attached activity is told about the lock.
+     */
+    void lock() {
+        if (this.locked) {
+            return;
+        }
+        this.locked = true;
+        this.handler.removeCallbacks(this.lockRunnable);
+        if (current == this) {
+            current = null;
+        }
+        this.settingsManager.writeLocalSettings();
+        this.kgkManager.reset();
+        this.settingsManager.afterLocalSettingsWritten(new Runnable() {
+            @Override
+            public void run() {
+                settingsManager.clearLoadedSettings();
+            }
+        });
+        OnLockListener listener = this.lockListener;
+        this.lockListener = null;
+        if (listener != null) {
+            listener.onSessionLocked();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package de.pinyto.ctSESAM;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible input data for the benchmarks.
+ */
+class BenchmarkData {
+    static final long SEED = 0x5e5a3L;
+
+    static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(SEED + length).nextBytes(bytes);
+        return bytes;
+    }
+
+    static List<PasswordSetting> settings(int count) {
+        Random random = new Random(SEED);
+        List<PasswordSetting> settings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            PasswordSetting setting = new PasswordSetting("domain" + i + ".example.com");
+            setting.setUrl("https://login.domain" + i + ".example.com/");
+            setting.setUsername("user" + random.nextInt(1000) + "@example.com");
+            if (i % 10 == 0) {
+                setting.setNotes("Security question: the name of the first pet.");
+            }
+            setting.setCreationDate("2017-0" + (1 + i % 9) + "-1" + (i % 10) + "T10:15:30");
+            setting.setModificationDate("2018-0" + (1 + i % 9) + "-1" + (i % 10) + "T11:15:30");
+            settings.add(setting);
+        }
+        return settings;
+    }
+
+    /**
+     * Builds the JSON structure which PasswordSettingsManager stores locally.
+     */
+    static String localSettingsJson(int count) {
+        JSONObject settingsObject = new JSONObject();
+        JSONArray synced = new JSONArray();
+        try {
+            for (PasswordSetting setting : settings(count)) {
+                settingsObject.put(setting.getDomain(), setting.toJSON());
+                synced.put(setting.getDomain());
+            }
+            JSONObject storeStructure = new JSONObject();
+            storeStructure.put("settings", settingsObject);
+            storeStructure.put("synced", synced);
+            return storeStructure.toString();
+        } catch (JSONException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
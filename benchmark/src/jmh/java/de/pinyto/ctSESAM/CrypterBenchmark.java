@@ -0,0 +1,47 @@
+package de.pinyto.ctSESAM;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.Security;
+
+/**
+ * AES encryption and decryption of vault sized data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class CrypterBenchmark {
+    @Param({"112", "4096", "65536"})
+    public int size;
+
+    private Crypter crypter;
+    private byte[] plaintext;
+    private byte[] ciphertext;
+
+    @Setup
+    public void setUp() {
+        Security.addProvider(new BouncyCastleProvider());
+        crypter = new Crypter(BenchmarkData.randomBytes(48));
+        plaintext = BenchmarkData.randomBytes(size);
+        ciphertext = crypter.encrypt(plaintext);
+        if (ciphertext.length == 0) {
+            throw new IllegalStateException("AES/CBC/PKCS7Padding is not available.");
+        }
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return crypter.encrypt(plaintext);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return crypter.decrypt(ciphertext);
+    }
+}
@@ -0,0 +1,59 @@
+package de.pinyto.ctSESAM;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decoding the compressed local settings: the String and JSONObject tree against the
+ * streaming decoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class LocalSettingsDecoderBenchmark {
+    @Param({"50", "200"})
+    public int settingsCount;
+
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        compressed = Packer.compress(BenchmarkData.localSettingsJson(settingsCount));
+    }
+
+    @Benchmark
+    public List<PasswordSetting> jsonTree() throws JSONException {
+        JSONObject settings = new JSONObject(Packer.decompress(compressed))
+                .getJSONObject("settings");
+        List<PasswordSetting> decoded = new ArrayList<>();
+        Iterator<String> keys = settings.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            PasswordSetting setting = new PasswordSetting(key);
+            setting.loadFromJSON(settings.getJSONObject(key));
+            decoded.add(setting);
+        }
+        return decoded;
+    }
+
+    @Benchmark
+    public LocalSettingsDecoder streaming() throws IOException {
+        LocalSettingsDecoder decoder = new LocalSettingsDecoder();
+        Reader reader = Packer.decompressToReader(compressed);
+        decoder.decode(reader);
+        reader.close();
+        return decoder;
+    }
+}
@@ -0,0 +1,43 @@
+package de.pinyto.ctSESAM;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Key derivation with the iteration counts which the app uses. "jca" is PBKDF2 which uses
+ * javax.crypto.Mac, "fast" is FastPBKDF2.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class PBKDF2Benchmark {
+    @Param({"SHA256", "SHA384", "SHA512"})
+    public String hashFunction;
+
+    @Param({"1024", "4096", "32768"})
+    public int iterations;
+
+    @Param({"jca", "fast"})
+    public String implementation;
+
+    private byte[] password;
+    private byte[] salt;
+
+    @Setup
+    public void setUp() {
+        password = BenchmarkData.randomBytes(96);
+        salt = BenchmarkData.randomBytes(32);
+    }
+
+    @Benchmark
+    public byte[] hmac() {
+        if (implementation.equals("fast")) {
+            return FastPBKDF2.hmac(hashFunction, password, salt, iterations);
+        }
+        return PBKDF2.hmac(hashFunction, password, salt, iterations);
+    }
+}
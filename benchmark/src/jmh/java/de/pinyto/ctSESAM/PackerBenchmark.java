@@ -0,0 +1,39 @@
+package de.pinyto.ctSESAM;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compression of the settings JSON for vaults of different sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class PackerBenchmark {
+    // Packer.decompress refuses more than 100kb so 200 settings is the largest vault.
+    @Param({"10", "50", "200"})
+    public int settingsCount;
+
+    private String json;
+    private byte[] compressed;
+
+    @Setup
+    public void setUp() {
+        json = BenchmarkData.localSettingsJson(settingsCount);
+        compressed = Packer.compress(json);
+    }
+
+    @Benchmark
+    public byte[] compress() {
+        return Packer.compress(json);
+    }
+
+    @Benchmark
+    public String decompress() {
+        return Packer.decompress(compressed);
+    }
+}
@@ -0,0 +1,78 @@
+package de.pinyto.ctSESAM;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing in the constructor of PasswordGenerator and the conversion of the hash to a password.
+ */
+@State(Scope.Thread)
+public class PasswordGeneratorBenchmark {
+    private byte[] domain;
+    private byte[] username;
+    private byte[] kgk;
+    private byte[] salt;
+
+    @Setup
+    public void setUp() {
+        domain = UTF8.encode("www.example.com");
+        username = UTF8.encode("user@example.com");
+        kgk = BenchmarkData.randomBytes(64);
+        salt = BenchmarkData.randomBytes(32);
+    }
+
+    @State(Scope.Thread)
+    public static class Generated {
+        @Param({"aAnoxxxxxx", "xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxnoAa"})
+        public String template;
+
+        PasswordGenerator generator;
+        PasswordSetting setting;
+        char[] password;
+
+        @Setup
+        public void setUp() throws NotHashedException {
+            generator = new PasswordGenerator(UTF8.encode("www.example.com"),
+                    UTF8.encode("user@example.com"), BenchmarkData.randomBytes(64),
+                    BenchmarkData.randomBytes(32), 4096);
+            setting = new PasswordSetting("www.example.com");
+            setting.setTemplate(template);
+            password = new char[template.length()];
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    public PasswordGenerator construct() throws NotHashedException {
+        return new PasswordGenerator(domain, username, kgk, salt, 4096);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String getPassword(Generated generated) {
+        return generated.generator.getPassword(generated.setting);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int getPasswordIntoArray(Generated generated) {
+        return generated.generator.getPassword(generated.setting, generated.password);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public StrengthPreview strengthPreview(Generated generated) {
+        return new StrengthPreview(generated.generator, generated.setting);
+    }
+}
@@ -0,0 +1,65 @@
+package de.pinyto.ctSESAM;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.Security;
+import java.util.List;
+
+/**
+ * Storing the local settings: the JSONObject tree, String and compressed byte array against
+ * the streaming encoder.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class SettingsEncoderBenchmark {
+    @Param({"50", "200"})
+    public int settingsCount;
+
+    private List<PasswordSetting> settings;
+    private Crypter crypter;
+
+    @Setup
+    public void setUp() {
+        Security.addProvider(new BouncyCastleProvider());
+        settings = BenchmarkData.settings(settingsCount);
+        for (PasswordSetting setting : settings) {
+            setting.setSynced(true);
+        }
+        crypter = new Crypter(BenchmarkData.randomBytes(48));
+    }
+
+    @Benchmark
+    public byte[] jsonTree() throws JSONException {
+        JSONObject settingsObject = new JSONObject();
+        JSONArray synced = new JSONArray();
+        for (PasswordSetting setting : settings) {
+            settingsObject.put(setting.getDomain(), setting.toJSON());
+            if (setting.isSynced()) {
+                synced.put(setting.getDomain());
+            }
+        }
+        JSONObject storeStructure = new JSONObject();
+        storeStructure.put("settings", settingsObject);
+        storeStructure.put("synced", synced);
+        return crypter.encrypt(Packer.compress(storeStructure.toString()));
+    }
+
+    @Benchmark
+    public byte[] streaming() throws IOException {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        new SettingsEncoder(settings, true).encrypt(crypter, encrypted);
+        return encrypted.toByteArray();
+    }
+}
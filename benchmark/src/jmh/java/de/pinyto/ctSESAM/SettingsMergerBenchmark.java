@@ -0,0 +1,70 @@
+package de.pinyto.ctSESAM;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merging a remote vault into the local settings. A fifth of the remote settings is newer,
+ * a tenth only exists remotely and a tenth of the local settings is missing remotely.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+public class SettingsMergerBenchmark {
+    // The remote vault has to pass Packer.decompress, which refuses more than 100kb. With the
+    // remote-only settings 200 local settings are the largest vault the app can load.
+    @Param({"50", "200"})
+    public int settingsCount;
+
+    private List<PasswordSetting> settings;
+    private JSONObject remote;
+    private Map<String, PasswordSetting> local;
+
+    @Setup
+    public void setUp() throws JSONException {
+        settings = BenchmarkData.settings(settingsCount);
+        remote = new JSONObject();
+        for (int i = 0; i < settings.size(); i++) {
+            PasswordSetting setting = settings.get(i);
+            setting.setSynced(true);
+            if (i % 10 == 9) {
+                continue;
+            }
+            JSONObject remoteSetting = setting.toJSON();
+            if (i % 5 == 0) {
+                remoteSetting.put("mDate", "2019-01-01T12:00:00");
+                remoteSetting.put("iterations", 8192);
+            }
+            remote.put(setting.getDomain(), remoteSetting);
+        }
+        for (int i = 0; i < settingsCount / 10; i++) {
+            PasswordSetting remoteOnly = new PasswordSetting("remote" + i + ".example.com");
+            remote.put(remoteOnly.getDomain(), remoteOnly.toJSON());
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copyLocalSettings() throws CloneNotSupportedException {
+        local = new HashMap<>();
+        for (PasswordSetting setting : settings) {
+            local.put(setting.getDomain(), (PasswordSetting) setting.clone());
+        }
+    }
+
+    @Benchmark
+    public SettingsMerger.Result merge() throws JSONException, ParseException {
+        return SettingsMerger.merge(local, remote);
+    }
+}
@@ -0,0 +1,32 @@
+package de.pinyto.ctSESAM;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UTF8.encode and DomainExtractor.extract which run on every keystroke and clipboard paste.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TextBenchmark {
+    @Param({"https://www.example.co.uk/login?next=/account", "login.example.com", "localhost"})
+    public String url;
+
+    @Benchmark
+    public byte[] utf8Encode() {
+        return UTF8.encode(url);
+    }
+
+    @Benchmark
+    public String extractDomain() {
+        return DomainExtractor.extract(url);
+    }
+}
@@ -0,0 +1,8 @@
+package android.text;
+
+/**
+ * JVM replacement for the part of the Android Editable interface which is used by Clearer.
+ */
+public interface Editable extends CharSequence {
+    Editable replace(int st, int en, CharSequence text);
+}
@@ -0,0 +1,103 @@
+package android.util;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * JVM replacement for the Android Base64 utility. Only the flags used by the app are supported.
+ * DEFAULT wraps the output after 76 characters with "\n" like Android does.
+ */
+public final class Base64 {
+    public static final int DEFAULT = 0;
+    public static final int NO_PADDING = 1;
+    public static final int NO_WRAP = 2;
+
+    private static final char[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private Base64() {
+    }
+
+    public static String encodeToString(byte[] input, int flags) {
+        StringBuilder output = new StringBuilder((input.length + 2) / 3 * 4 + input.length / 57 + 1);
+        int lineLength = 0;
+        for (int i = 0; i < input.length; i += 3) {
+            int b0 = input[i] & 0xff;
+            int b1 = i + 1 < input.length ? input[i + 1] & 0xff : 0;
+            int b2 = i + 2 < input.length ? input[i + 2] & 0xff : 0;
+            output.append(ALPHABET[b0 >>> 2]);
+            output.append(ALPHABET[((b0 & 0x03) << 4) | (b1 >>> 4)]);
+            if (i + 1 < input.length) {
+                output.append(ALPHABET[((b1 & 0x0f) << 2) | (b2 >>> 6)]);
+            } else if ((flags & NO_PADDING) == 0) {
+                output.append('=');
+            }
+            if (i + 2 < input.length) {
+                output.append(ALPHABET[b2 & 0x3f]);
+            } else if ((flags & NO_PADDING) == 0) {
+                output.append('=');
+            }
+            lineLength += 4;
+            if ((flags & NO_WRAP) == 0 && lineLength >= 76) {
+                output.append('\n');
+                lineLength = 0;
+            }
+        }
+        if ((flags & NO_WRAP) == 0 && lineLength > 0) {
+            output.append('\n');
+        }
+        return output.toString();
+    }
+
+    public static byte[] encode(byte[] input, int flags) {
+        try {
+            return encodeToString(input, flags).getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    public static byte[] decode(String str, int flags) {
+        byte[] output = new byte[str.length() * 3 / 4];
+        int count = 0;
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            int value;
+            if (c >= 'A' && c <= 'Z') {
+                value = c - 'A';
+            } else if (c >= 'a' && c <= 'z') {
+                value = c - 'a' + 26;
+            } else if (c >= '0' && c <= '9') {
+                value = c - '0' + 52;
+            } else if (c == '+' || c == '-') {
+                value = 62;
+            } else if (c == '/' || c == '_') {
+                value = 63;
+            } else if (c == '=') {
+                break;
+            } else if (c == '\n' || c == '\r' || c == ' ' || c == '\t') {
+                continue;
+            } else {
+                throw new IllegalArgumentException("bad base-64");
+            }
+            buffer = (buffer << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                output[count++] = (byte) (buffer >>> bits);
+            }
+        }
+        byte[] result = new byte[count];
+        System.arraycopy(output, 0, result, 0, count);
+        return result;
+    }
+
+    public static byte[] decode(byte[] input, int flags) {
+        try {
+            return decode(new String(input, "US-ASCII"), flags);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}